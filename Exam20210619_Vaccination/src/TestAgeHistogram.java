@@ -0,0 +1,72 @@
+import static org.junit.Assert.assertEquals;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.oop.vaccination.AgeHistogram;
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestAgeHistogram {
+    private Vaccines vs;
+
+    @Before
+    public void setUp() throws VaccineException {
+    	vs = new Vaccines();
+    	vs.setClock(Clock.fixed(Instant.parse("2021-06-19T10:00:00Z"), ZoneOffset.UTC));
+    	// more than one chunk of rows and of allocation bits
+    	for(int i=0; i<100_000; i++)
+    		vs.addPerson("F"+i, "L"+i, "S"+i, 1920+i%100);
+    	vs.setAgeIntervals(30, 60);
+    	vs.defineHub("A");
+    	vs.setStaff("A", 50, 50, 50);
+    	vs.setHours(12, 12, 12, 12, 12, 12, 12);
+    }
+
+    @Test
+    public void testCounts() {
+    	AgeHistogram h = vs.getAgeHistogram();
+    	assertEquals(1920, h.getMinYear());
+    	assertEquals(2019, h.getMaxYear());
+    	assertEquals(1000, h.getCount(1950));
+    	assertEquals(0, h.getCount(1900));
+    	long tot=0;
+    	for(long[] c: h.byAge().values()) tot+=c[0]+c[1];
+    	assertEquals(vs.countPeople(), tot);
+    	assertEquals(2, h.byAge().keySet().iterator().next().intValue());	// youngest first
+    }
+
+    @Test
+    public void testSameAsStatistics() {
+    	vs.weekAllocate();
+    	Map<String, long[]> m = vs.getIntervalHistogram();
+    	Map<String, Double> p = vs.propAllocatedAge();
+    	int n=vs.countPeople();
+    	long allocati=0;
+    	for(Map.Entry<String, long[]> e: m.entrySet()) {
+    		assertEquals(e.getKey(), p.get(e.getKey()), (double)e.getValue()[0]/n, 1e-12);
+    		assertEquals(e.getKey(), vs.getInInterval(e.getKey()).size(), e.getValue()[0]+e.getValue()[1]);
+    		allocati+=e.getValue()[0];
+    	}
+    	assertEquals(vs.propAllocated(), (double)allocati/n, 1e-12);
+
+    	vs.clearAllocation();
+    	for(long[] c: vs.getIntervalHistogram().values())
+    		assertEquals(0, c[0]);
+    }
+
+    @Test
+    public void testAddAfterHistogram() {
+    	vs.getAgeHistogram();
+    	vs.addPerson("F", "L", "NEW", 1900);
+    	AgeHistogram h = vs.getAgeHistogram();
+    	assertEquals(1900, h.getMinYear());
+    	assertEquals(1, h.getUnallocated(1900));
+    	assertEquals(1, h.getInAges(121, -1)[1]);
+    }
+}
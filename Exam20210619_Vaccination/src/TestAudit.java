@@ -0,0 +1,87 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestAudit {
+    private Vaccines vs;
+
+    @Before
+    public void setUp() throws VaccineException {
+    	vs = new Vaccines();
+    	for(int i=0; i<100; i++)
+    		vs.addPerson("F"+i, "L"+i, "S"+i, 1930+i%80);
+    	vs.setAgeIntervals(30, 60);
+    	vs.defineHub("A");
+    	vs.setStaff("A", 1, 1, 1);	// 10 per hour
+    	vs.setHours(1, 1, 1, 1, 1, 1, 1);
+    }
+
+    private String last(String ssn) {
+    	List<String> l = vs.explain(ssn);
+    	return l.get(l.size()-1);
+    }
+
+    @Test
+    public void testNotEnabled() {
+    	assertEquals("audit not enabled", last("S0"));
+    	assertEquals(0, vs.explain("none").size());
+    }
+
+    @Test
+    public void testAllocated() {
+    	vs.enableAudit(1000);
+    	List<String> l = vs.allocate("A", 0);
+    	assertEquals(10, l.size());
+    	List<String> e = vs.explain(l.get(0));
+    	assertEquals(1, e.size());
+    	assertTrue(e.get(0), e.get(0).startsWith("round 1: hub A, day 0, interval "));
+    }
+
+    @Test
+    public void testNoPlaceLeft() {
+    	vs.enableAudit(1000);
+    	List<String> l = vs.allocate("A", 0);
+    	String escluso=null;
+    	for(int i=0; i<100 && escluso==null; i++)
+    		if(!l.contains("S"+i)) escluso="S"+i;
+    	assertTrue(last(escluso), last(escluso).startsWith("not allocated: no place left for interval "));
+    }
+
+    @Test
+    public void testUnknownReason() {
+    	vs.enableAudit(1000);
+    	assertTrue(last("S0"), last("S0").startsWith("not allocated: reason unknown"));
+    }
+
+    @Test
+    public void testAuditEnabledAfterAllocation() {
+    	List<String> l = vs.allocate("A", 0);
+    	vs.enableAudit(1000);
+    	for(int i=0; i<100; i++)
+    		if(!l.contains("S"+i))
+    			assertTrue(last("S"+i), last("S"+i).startsWith("not allocated: reason unknown"));
+    }
+
+    @Test
+    public void testNewRound() {
+    	vs.enableAudit(1000);
+    	List<String> l = vs.allocate("A", 0);
+    	vs.clearAllocation();
+    	assertEquals("not allocated in the current round", last(l.get(0)));
+    	for(int i=0; i<100; i++)
+    		if(!l.contains("S"+i))
+    			assertTrue(last("S"+i), last("S"+i).startsWith("not allocated: reason unknown"));
+    	vs.weekAllocate();
+    	int visti=0;
+    	for(int i=0; i<100; i++)
+    		if(last("S"+i).startsWith("not allocated: no place left")) visti++;
+    	assertEquals(100-70, visti);
+    }
+}
@@ -0,0 +1,91 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import it.polito.oop.vaccination.CsvFormat;
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestCsvFormat {
+
+    private final List<Integer> errors = new ArrayList<>();
+
+    private Vaccines load(String csv, CsvFormat format) throws IOException, VaccineException {
+    	Vaccines vs = new Vaccines();
+    	vs.setLoadListener((n, line) -> errors.add(n));
+    	vs.loadPeople(new StringReader(csv), format);
+    	return vs;
+    }
+
+    @Test
+    public void testDefault() throws IOException, VaccineException {
+    	Vaccines vs = load("SSN,LAST,FIRST,YEAR\nA1,Rossi,Mario,1950\nA2,Bianchi,Anna,1980\n", CsvFormat.DEFAULT);
+    	assertEquals(2, vs.countPeople());
+    	assertTrue(vs.getPerson("A1").startsWith("A1,Rossi,Mario"));
+    	assertEquals(0, errors.size());
+    }
+
+    @Test
+    public void testSemicolonAndColumnOrder() throws IOException, VaccineException {
+    	Vaccines vs = load("YEAR;FIRST;SSN;LAST;NOTE\n1950;Mario;A1;Rossi;x\n", CsvFormat.SEMICOLON);
+    	assertEquals(1, vs.countPeople());
+    	assertNotNull(vs.getPerson("A1"));
+    	assertTrue(vs.getPerson("A1").contains("Rossi"));
+    }
+
+    @Test
+    public void testTab() throws IOException, VaccineException {
+    	Vaccines vs = load("SSN\tLAST\tFIRST\tYEAR\nA1\tRossi\tMario\t1950\n", CsvFormat.TAB);
+    	assertEquals(1, vs.countPeople());
+    }
+
+    @Test
+    public void testBom() throws IOException, VaccineException {
+    	byte[] csv = "\uFEFFSSN,LAST,FIRST,YEAR\nA1,Rossi,Mario,1950\n".getBytes(StandardCharsets.UTF_8);
+    	Vaccines vs = new Vaccines();
+    	assertEquals(1, vs.loadPeople(new ByteArrayInputStream(csv), CsvFormat.DEFAULT));
+    	assertNotNull(vs.getPerson("A1"));
+    }
+
+    @Test
+    public void testQuotedFields() throws IOException, VaccineException {
+    	Vaccines vs = load("SSN,LAST,FIRST,YEAR\nA1,\"De Rossi, Jr\",\"Ma\"\"rio\",1950\nA2,\"unterminated,Anna,1980\n", CsvFormat.DEFAULT);
+    	assertEquals(1, vs.countPeople());
+    	assertTrue(vs.getPerson("A1").contains("De Rossi, Jr"));
+    	assertTrue(vs.getPerson("A1").contains("Ma\"rio"));
+    	assertEquals("unterminated quote reported", 1, errors.size());
+    	assertEquals(3, (int)errors.get(0));
+    }
+
+    @Test
+    public void testBadLines() throws IOException, VaccineException {
+    	Vaccines vs = load("SSN,LAST,FIRST,YEAR\nA1,Rossi,Mario,19x0\nA2,Bianchi\nA3,Verdi,Luca,1970\nA3,Verdi,Luca,1970\n,Neri,Ugo,1960\n", CsvFormat.DEFAULT);
+    	assertEquals(1, vs.countPeople());
+    	assertEquals("bad year, short line, duplicate and empty SSN", 4, errors.size());
+    	assertEquals(2, (int)errors.get(0));
+    	assertEquals(3, (int)errors.get(1));
+    	assertEquals(5, (int)errors.get(2));
+    	assertEquals(6, (int)errors.get(3));
+    }
+
+    @Test
+    public void testBadHeader() throws IOException {
+    	try {
+    		load("CF,COGNOME,NOME\nA1,Rossi,Mario\n", CsvFormat.DEFAULT);
+    		fail("header error expected");
+    	} catch(VaccineException e) {
+    		assertEquals(1, errors.size());
+    		assertEquals(1, (int)errors.get(0));
+    	}
+    }
+}
@@ -0,0 +1,121 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.oop.vaccination.DoseScheduler;
+import it.polito.oop.vaccination.PopulationGenerator;
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestDoseScheduler {
+    private Vaccines vs;
+
+    @Before
+    public void setUp() throws VaccineException {
+    	vs = new Vaccines();
+    	vs.defineHub("A");
+    	vs.defineHub("B");
+    	vs.setStaff("A", 1, 1, 1);	// 10 per hour
+    	vs.setStaff("B", 2, 2, 1);	// 20 per hour
+    	vs.setHours(1, 0, 0, 0, 0, 0, 1);
+    }
+
+    @Test
+    public void testEarliestHub() {
+    	for(int i=0; i<30; i++)
+    		vs.addPerson("F"+i, "L"+i, "S"+i, 1920+i);
+    	DoseScheduler s = new DoseScheduler(vs, 2, 6, 6);
+    	assertEquals(30, s.schedule());
+    	int a=0;
+    	for(int i=0; i<30; i++) {
+    		assertEquals("S"+i, 0, s.getFirstDose("S"+i));
+    		assertEquals("S"+i, 6, s.getSecondDose("S"+i));
+    		if(s.getHub("S"+i).equals("A")) a++;
+    	}
+    	assertEquals(10, a);
+    	assertEquals(0, s.getFree("A", 0, 1));
+    	assertEquals(0, s.getFree("B", 0, 1));
+
+    	vs.addPerson("F", "L", "S", 1950);
+    	assertEquals(1, s.schedule());
+    	assertEquals(7, s.getFirstDose("S"));
+    	assertEquals(13, s.getSecondDose("S"));
+    }
+
+    @Test
+    public void testRoundRobinOnTies() {
+    	for(int i=0; i<4; i++)
+    		vs.addPerson("F"+i, "L"+i, "S"+i, 1920+i);
+    	DoseScheduler s = new DoseScheduler(vs, 2, 6, 6);
+    	assertEquals(4, s.schedule());
+    	assertEquals("A", s.getHub("S0"));
+    	assertEquals("B", s.getHub("S1"));
+    	assertEquals("A", s.getHub("S2"));
+    	assertEquals("B", s.getHub("S3"));
+    }
+
+    @Test
+    public void testGaps() {
+    	for(int i=0; i<100; i++)
+    		vs.addPerson("F"+i, "L"+i, "S"+i, 1920+i%80);
+    	DoseScheduler s = new DoseScheduler(vs, 3, 6, 8);
+    	int n=s.schedule();
+    	assertTrue(n > 0 && n < 100);
+    	int fatti=0;
+    	for(int i=0; i<100; i++) {
+    		String h=s.getHub("S"+i);
+    		if(h==null) {
+    			assertEquals(-1, s.getFirstDose("S"+i));
+    			continue;
+    		}
+    		fatti++;
+    		int gap=s.getSecondDose("S"+i)-s.getFirstDose("S"+i);
+    		assertTrue(gap>=6 && gap<=8);
+    	}
+    	assertEquals(n, fatti);
+    	assertNull(s.getHub("none"));
+    }
+
+    @Test
+    public void testManyHubs() throws VaccineException {
+    	Vaccines v = new Vaccines();
+    	PopulationGenerator.defineHubs(v, 2000);
+    	v.setHours(8, 8, 8, 8, 8, 0, 0);
+    	for(int i=0; i<300_000; i++)
+    		v.addPerson("F", "L", "S"+i, 1920+i%90);
+    	DoseScheduler s = new DoseScheduler(v, 4, 21, 28);
+    	int n=s.schedule();
+    	assertTrue(n > 0);
+    	// capacity only decreases, so the oldest never get a later first dose
+    	int prima=0, fatti=0;
+    	for(int y=1920; y<2010; y++)
+    		for(int i=y-1920; i<300_000; i+=90) {
+    			String ssn="S"+i;
+    			if(s.getHub(ssn)==null) continue;
+    			fatti++;
+    			assertTrue(s.getFirstDose(ssn) >= prima);
+    			prima=s.getFirstDose(ssn);
+    			int gap=s.getSecondDose(ssn)-prima;
+    			assertTrue(gap>=21 && gap<=28);
+    		}
+    	assertEquals(n, fatti);
+    }
+
+    @Test
+    public void testRoundRobinManyHubs() throws VaccineException {
+    	for(String h: new String[] {"C", "D", "E"}) {
+    		vs.defineHub(h);
+    		vs.setStaff(h, 1, 1, 1);
+    	}
+    	for(int i=0; i<10; i++)
+    		vs.addPerson("F"+i, "L"+i, "S"+i, 1920+i);
+    	DoseScheduler s = new DoseScheduler(vs, 2, 6, 6);
+    	assertEquals(10, s.schedule());
+    	String[] attesi = {"A", "B", "C", "D", "E"};
+    	for(int i=0; i<10; i++)
+    		assertEquals("S"+i, attesi[i%5], s.getHub("S"+i));
+    }
+}
@@ -0,0 +1,97 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.oop.vaccination.CsvFormat;
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestFork {
+    private Vaccines vs;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException, VaccineException {
+    	vs = new Vaccines();
+    	vs.addPerson("F1", "L1", "S1", 1950);
+    	vs.addPerson("F2", "L2", "S2", 1960);
+    	vs.setAgeIntervals(30, 60);
+    	vs.defineHub("A");
+    	vs.setStaff("A", 1, 1, 1);
+    	vs.setHours(1, 1, 1, 1, 1, 1, 1);
+    	file = Files.createTempFile("people", ".csv");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+    	Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testIndependence() throws VaccineException {
+    	Vaccines f = vs.fork();
+    	f.addPerson("F3", "L3", "S3", 1970);
+    	f.defineHub("B");
+    	assertEquals(2, vs.countPeople());
+    	assertEquals(3, f.countPeople());
+    	assertNull(vs.getPerson("S3"));
+    	assertEquals(1, vs.getHubs().size());
+
+    	vs.addPerson("F4", "L4", "S4", 1980);
+    	assertNull(f.getPerson("S4"));
+    	assertNotNull(f.getPerson("S3"));
+
+    	Collection<String> a = f.allocate("A", 0);
+    	assertEquals(0.0, vs.propAllocated(), 0.0);
+    	assertEquals((double)a.size()/f.countPeople(), f.propAllocated(), 1e-9);
+    }
+
+    @Test
+    public void testChangeBreaks() {
+    	for(int i=0; i<2000; i++)
+    		vs.addPerson("F"+i, "L"+i, "X"+i, 1930+i%80);
+    	vs.setAgeIntervals(30, 40, 50, 60, 70);
+    	Vaccines f = vs.fork();
+    	f.setAgeIntervals(50, 60, 70);
+    	assertEquals(Arrays.asList("[0,50)", "[50,60)", "[60,70)", "[70,+)"), new ArrayList<>(f.getAgeIntervals()));
+    	assertEquals(6, vs.getAgeIntervals().size());
+
+    	List<String> tutti = new ArrayList<>();
+    	for(Map<String, List<String>> m: f.weekAllocate())
+    		for(List<String> l: m.values()) tutti.addAll(l);
+    	assertEquals(tutti.size(), new HashSet<>(tutti).size());
+    	double tot = f.distributionAllocated().values().stream().mapToDouble(Double::doubleValue).sum();
+    	assertEquals(1.0, tot, 1e-9);
+    }
+
+    @Test
+    public void testLazyAfterFork() throws IOException, VaccineException {
+    	Files.write(file, ("SSN,LAST,FIRST,YEAR\n" +
+    			"\"S5\",L5,F5,1975\n" +		// quoted, added at once
+    			"S5,L5,F5,1975\n" +			// duplicate of the previous line
+    			"S1,L1,F1,1950\n" +			// duplicate of a known person
+    			"S6,L6,F6,1985\n").getBytes(StandardCharsets.UTF_8));
+    	Vaccines f = vs.fork();
+    	assertEquals(2, vs.loadPeopleLazy(file, CsvFormat.DEFAULT));
+    	assertEquals(4, vs.countPeople());
+    	vs.materialize();
+    	assertEquals(4, vs.countPeople());
+    	assertEquals(2, f.countPeople());
+    	assertNull(f.getPerson("S5"));
+    }
+}
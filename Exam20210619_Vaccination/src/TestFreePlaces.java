@@ -0,0 +1,77 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestFreePlaces {
+    private Vaccines vs;
+
+    @Before
+    public void setUp() throws VaccineException {
+    	vs = new Vaccines();
+    	for(int i=0; i<100; i++)
+    		vs.addPerson("F"+i, "L"+i, "S"+i, 1930+i%80);
+    	vs.setAgeIntervals(30, 60);
+    	vs.defineHub("A");
+    	vs.defineHub("B");
+    	vs.defineHub("C");
+    	vs.setStaff("A", 1, 1, 1);	// 10 per hour
+    	vs.setStaff("B", 2, 2, 2);	// 20 per hour
+    	vs.setHours(1, 2, 0, 0, 0, 0, 0);
+    }
+
+    @Test
+    public void testFree() {
+    	assertEquals(10, vs.getFree("A", 0));
+    	assertEquals(40, vs.getFree("B", 1));
+    	assertEquals(0, vs.getFree("C", 0));
+    	assertEquals(0, vs.getFree("none", 0));
+    	assertEquals(30, vs.getFree(Arrays.asList("A", "B", "none"), 0));
+    	assertEquals(90, vs.getFree(Arrays.asList("A", "B")));
+
+    	int n = vs.allocate("B", 0).size();
+    	assertEquals(20, n);
+    	assertEquals(0, vs.getFree("B", 0));
+    	assertEquals(40, vs.getFree("B", 1));
+    	assertEquals(70, vs.getFree(Arrays.asList("A", "B")));
+
+    	vs.clearAllocation();
+    	assertEquals(20, vs.getFree("B", 0));
+    }
+
+    @Test
+    public void testTopFree() {
+    	List<String> top = vs.getTopFree(0, 5);
+    	assertEquals(Arrays.asList("B", "A"), top);
+    	assertEquals(Arrays.asList("B"), vs.getTopFree(0, 1));
+    	vs.allocate("B", 0);
+    	assertEquals(Arrays.asList("A"), vs.getTopFree(0, 5));
+    	assertEquals(0, vs.getTopFree(2, 5).size());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testDayAfterSunday() {
+    	vs.getFree("A", 7);		// would be Monday of hub B
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNegativeDay() {
+    	vs.getFree(Arrays.asList("A"), -1);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testDayOfUndefinedHub() {
+    	vs.getFree("none", 9);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testTopFreeDay() {
+    	vs.getTopFree(7, 3);
+    }
+}
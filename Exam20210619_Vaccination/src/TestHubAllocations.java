@@ -0,0 +1,79 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestHubAllocations {
+    private Vaccines vs;
+
+    @Before
+    public void setUp() throws VaccineException {
+    	vs = new Vaccines();
+    	for(int i=0; i<500; i++)
+    		vs.addPerson("F"+i, "L"+i, "S"+i, 1930+i%80);
+    	vs.setAgeIntervals(30, 60);
+    	vs.defineHub("A");
+    	vs.defineHub("B");
+    	vs.setStaff("A", 1, 1, 1);		// 10 per hour
+    	vs.setStaff("B", 10, 10, 10);	// 100 per hour
+    	vs.setHours(1, 1, 1, 1, 1, 1, 1);
+    }
+
+    @Test
+    public void testDailyViews() {
+    	List<String> a = vs.allocate("A", 0);
+    	List<String> b = vs.allocate("B", 0);
+    	Map<String, List<String>> giorno = vs.d(0);
+    	assertEquals(a, giorno.get("A"));
+    	assertEquals(b, giorno.get("B"));
+    	assertEquals(0, vs.d(1).get("A").size());
+
+    	List<String> tutti = new ArrayList<>(a);
+    	tutti.addAll(b);
+    	assertEquals(tutti.size(), new HashSet<>(tutti).size());
+    }
+
+    @Test
+    public void testBufferGrowth() {
+    	// more than the initial buffer of 64 rows on each day
+    	List<Map<String, List<String>>> piano = vs.weekAllocate();
+    	int n=0;
+    	for(int d=0; d<7; d++) {
+    		List<String> l = piano.get(d).get("B");
+    		if(l!=null) {
+    			assertTrue(l.size() <= 100);
+    			n+=l.size();
+    		}
+    		if(piano.get(d).get("A")!=null) n+=piano.get(d).get("A").size();
+    	}
+    	assertEquals(500, n);
+    	assertEquals(1.0, vs.propAllocated(), 1e-9);
+    }
+
+    @Test
+    public void testViewsSurviveClear() {
+    	List<String> prima = vs.allocate("B", 0);
+    	List<String> copia = new ArrayList<>(prima);
+    	vs.clearAllocation();
+    	assertFalse(vs.d(0).containsKey("B"));
+    	vs.allocate("B", 0);
+    	vs.allocate("B", 0);
+    	assertEquals(copia, prima);
+    }
+
+    @Test(expected=UnsupportedOperationException.class)
+    public void testReadOnly() {
+    	vs.allocate("A", 0);
+    	vs.d(0).get("A").add("X");
+    }
+}
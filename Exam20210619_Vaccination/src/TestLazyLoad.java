@@ -0,0 +1,108 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.oop.vaccination.CsvFormat;
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestLazyLoad {
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2021-06-19T10:00:00Z"), ZoneOffset.UTC);
+
+    private Path file;
+    private String csv;
+
+    @Before
+    public void setUp() throws IOException {
+    	StringBuilder sb = new StringBuilder("SSN,LAST,FIRST,YEAR\n");
+    	for(int i=0; i<300; i++)
+    		sb.append("S").append(i).append(",L").append(i).append(",F").append(i).append(",").append(1930+i%80).append("\n");
+    	sb.append("S5,Dup,Dup,1950\n");				// duplicate
+    	sb.append("S900,L900,F900\n");				// missing field
+    	sb.append("S901,L901,F901,19x0\n");			// bad year
+    	sb.append("\"S902\",\"Rossi, Jr\",F902,1945\n");	// quoted
+    	sb.append(" S903 ,L903,F903, 1960 \n");		// blanks around fields
+    	csv = sb.toString();
+    	file = Files.createTempFile("people", ".csv");
+    	Files.write(file, csv.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+    	Files.deleteIfExists(file);
+    }
+
+    private static Vaccines system(List<Integer> errori) throws VaccineException {
+    	Vaccines v = new Vaccines();
+    	v.setClock(CLOCK);
+    	v.setAgeIntervals(30, 60);
+    	v.defineHub("A");
+    	v.setStaff("A", 2, 2, 2);
+    	v.setHours(1, 1, 1, 1, 1, 1, 1);
+    	v.setLoadListener((riga, s) -> errori.add(riga));
+    	return v;
+    }
+
+    @Test
+    public void testSameAsEager() throws IOException, VaccineException {
+    	List<Integer> erroriEager = new ArrayList<>(), erroriLazy = new ArrayList<>();
+    	Vaccines eager = system(erroriEager), lazy = system(erroriLazy);
+    	long e = eager.loadPeople(new StringReader(csv));
+    	long l = lazy.loadPeopleLazy(file, CsvFormat.DEFAULT);
+    	assertEquals(e, l);
+    	assertEquals(new HashSet<>(erroriEager), new HashSet<>(erroriLazy));
+    	assertEquals(eager.countPeople(), lazy.countPeople());
+
+    	for(String ssn: new String[] {"S0", "S5", "S299", "S902", "S903"}) {
+    		assertEquals(ssn, eager.getPerson(ssn), lazy.getPerson(ssn));
+    		assertEquals(ssn, eager.getAge(ssn), lazy.getAge(ssn));
+    	}
+    	assertNull(lazy.getPerson("S900"));
+    	assertEquals(-1, lazy.getAge("S901"));
+
+    	for(String i: eager.getAgeIntervals())
+    		assertEquals(i, new HashSet<>(eager.getInInterval(i)), new HashSet<>(lazy.getInInterval(i)));
+    	// quoted lines are decoded at once and get earlier rows, so only the sets must match
+    	List<Map<String, List<String>>> pe = eager.weekAllocate(), pl = lazy.weekAllocate();
+    	for(int d=0; d<7; d++)
+    		assertEquals(new HashSet<>(pe.get(d).get("A")), new HashSet<>(pl.get(d).get("A")));
+    	assertEquals(eager.propAllocatedAge(), lazy.propAllocatedAge());
+    }
+
+    @Test
+    public void testAddAfterLazy() throws IOException, VaccineException {
+    	Vaccines lazy = system(new ArrayList<>());
+    	lazy.loadPeopleLazy(file, CsvFormat.DEFAULT);
+    	int n = lazy.countPeople();
+    	assertEquals(false, lazy.addPerson("X", "Y", "S10", 1980));	// not decoded yet
+    	assertEquals(true, lazy.addPerson("X", "Y", "NEW", 1980));
+    	assertEquals(n+1, lazy.countPeople());
+    	lazy.materialize();
+    	assertEquals(n+1, lazy.countPeople());
+    	assertEquals("S10,L10,F10", lazy.getPerson("S10"));
+    }
+
+    @Test
+    public void testTwoLazyFiles() throws IOException, VaccineException {
+    	Vaccines lazy = system(new ArrayList<>());
+    	long primo = lazy.loadPeopleLazy(file, CsvFormat.DEFAULT);
+    	assertEquals(0, lazy.loadPeopleLazy(file, CsvFormat.DEFAULT));	// all duplicates
+    	assertEquals(primo, lazy.countPeople());
+    }
+}
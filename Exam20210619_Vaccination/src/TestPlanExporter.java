@@ -0,0 +1,151 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.oop.vaccination.PlanExporter;
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestPlanExporter {
+    private static final String HUB = "Hub, \"A\"";
+
+    private Vaccines vs;
+    private ByteArrayOutputStream out;
+
+    @Before
+    public void setUp() throws VaccineException {
+    	vs = new Vaccines();
+    	for(int i=0; i<200; i++)
+    		vs.addPerson("F", "L", "S"+i, 1830+i);
+    	vs.defineHub(HUB);
+    	vs.setStaff(HUB, 1, 1, 1);
+    	vs.defineHub("Empty");
+    	out = new ByteArrayOutputStream();
+    }
+
+    @Test
+    public void testPlanCsvQuoting() throws IOException, VaccineException {
+    	vs.setHours(1,1,1,1,1,1,1);
+    	vs.setAgeIntervals(50);
+    	List<String> l = vs.allocate(HUB, 2);
+    	new PlanExporter(vs).writePlanCsv(Channels.newChannel(out));
+    	String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+    	assertEquals("DAY,HUB,SSN,INTERVAL", lines[0]);
+    	assertEquals(l.size()+1, lines.length);
+    	String first = lines[1];
+    	assertTrue(first, first.startsWith("2,\"Hub, \"\"A\"\"\"," + l.get(0) + ",\"["));
+    }
+
+    @Test
+    public void testPlanBinary() throws IOException, VaccineException {
+    	vs.setHours(1,1,1,1,1,1,1);
+    	int[] breaks = new int[200];
+    	for(int i=0; i<breaks.length; i++) breaks[i]=i+1;
+    	vs.setAgeIntervals(breaks);
+    	List<String> l = vs.allocate(HUB, 0);
+    	new PlanExporter(vs, 256).writePlanBinary(Channels.newChannel(out));
+    	DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    	assertEquals(0x56504C4E, in.readInt());
+    	assertEquals(2, in.readInt());
+    	int hubs = in.readInt();
+    	for(int i=0; i<hubs; i++) in.readUTF();
+    	int intervals = in.readInt();
+    	assertEquals(201, intervals);
+    	String[] labels = new String[intervals];
+    	for(int i=0; i<intervals; i++) labels[i]=in.readUTF();
+    	assertEquals(1, in.readInt());
+    	assertEquals(0, in.readByte());
+    	in.readInt();
+    	int n = in.readInt();
+    	assertEquals(l.size(), n);
+    	Set<String> ssns = new HashSet<>();
+    	for(int i=0; i<n; i++) ssns.add(in.readUTF());
+    	assertEquals(new HashSet<>(l), ssns);
+    	boolean wide = false;
+    	for(int i=0; i<n; i++) {
+    		short k = in.readShort();
+    		assertTrue(k>=0 && k<intervals);
+    		if(k>127) wide = true;
+    	}
+    	assertTrue("indexes over 127 are kept", wide);
+    	assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testAvailableWithoutHoursOrStaff() throws IOException, VaccineException {
+    	new PlanExporter(vs).writeAvailableCsv(Channels.newChannel(out));
+    	String csv = new String(out.toByteArray(), StandardCharsets.UTF_8);
+    	assertTrue(csv.startsWith("HUB,DAY,AVAILABLE,FREE\n"));
+    	assertTrue(csv.contains("Empty,3,0,0\n"));
+    	assertTrue(csv.contains("\"Hub, \"\"A\"\"\",3,0,0\n"));
+
+    	vs.setHours(2,2,2,2,2,2,2);
+    	vs.setAgeIntervals(50);
+    	vs.allocate(HUB, 3);
+    	out.reset();
+    	new PlanExporter(vs).writeAvailableCsv(Channels.newChannel(out));
+    	csv = new String(out.toByteArray(), StandardCharsets.UTF_8);
+    	assertTrue(csv.contains("\"Hub, \"\"A\"\"\",3,20,0\n"));
+    	assertTrue(csv.contains("\"Hub, \"\"A\"\"\",4,20,20\n"));
+    	assertTrue(csv.contains("Empty,3,0,0\n"));
+    }
+
+    @Test
+    public void testWriteOutsideTheMonitor() throws Exception {
+    	vs.setHours(1,1,1,1,1,1,1);
+    	vs.allocate(HUB, 0);
+    	CountDownLatch scrive = new CountDownLatch(1), aggiunto = new CountDownLatch(1);
+    	WritableByteChannel lento = new WritableByteChannel() {
+    		@Override
+    		public int write(ByteBuffer b) throws IOException {
+    			scrive.countDown();
+    			try {
+    				aggiunto.await(5, TimeUnit.SECONDS);
+    			} catch (InterruptedException e) {
+    				throw new IOException(e);
+    			}
+    			int n=b.remaining();
+    			b.position(b.limit());
+    			return n;
+    		}
+    		@Override
+    		public boolean isOpen() {
+    			return true;
+    		}
+    		@Override
+    		public void close() {
+    		}
+    	};
+    	Thread t = new Thread(() -> {
+    		try {
+    			new PlanExporter(vs).writePlanCsv(lento);
+    		} catch (IOException e) {
+    			throw new AssertionError(e);
+    		}
+    	});
+    	t.start();
+    	assertTrue(scrive.await(5, TimeUnit.SECONDS));
+    	new Thread(() -> {
+    		synchronized(vs) { vs.addPerson("F", "L", "NEW", 1990); }
+    		aggiunto.countDown();
+    	}).start();
+    	assertTrue("registration blocked by the export", aggiunto.await(2, TimeUnit.SECONDS));
+    	t.join();
+    }
+}
@@ -0,0 +1,68 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import it.polito.oop.vaccination.PopulationGenerator;
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestPopulationGenerator {
+
+    private static byte[] people(long seed, int n) throws IOException {
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	new PopulationGenerator(seed, 2021).writePeople(out, n);
+    	return out.toByteArray();
+    }
+
+    @Test
+    public void testSameSeed() throws IOException {
+    	assertArrayEquals(people(42, 1000), people(42, 1000));
+    	assertFalse(Arrays.equals(people(42, 1000), people(43, 1000)));
+    }
+
+    @Test
+    public void testLoad() throws IOException, VaccineException {
+    	int n=20000;
+    	Vaccines vs = new Vaccines();
+    	int[] errori = {0};
+    	vs.setLoadListener((riga, s) -> errori[0]++);
+    	long letti = vs.loadPeople(new InputStreamReader(
+    			new ByteArrayInputStream(people(7, n)), StandardCharsets.UTF_8));
+    	assertEquals(0, errori[0]);		// no malformed lines, no duplicate SSNs
+    	assertEquals(n, letti);
+    	assertEquals(n, vs.countPeople());
+
+    	vs.setAgeIntervals(10, 20, 30, 40, 50, 60, 70, 80, 90);
+    	long tot=0;
+    	for(String i: vs.getAgeIntervals())
+    		tot+=vs.getInInterval(i).size();
+    	assertEquals(n, tot);
+    	assertTrue(vs.getInInterval("[50,60)").size() > vs.getInInterval("[90,+)").size());
+    }
+
+    @Test
+    public void testHubs() throws VaccineException {
+    	Vaccines vs = new Vaccines();
+    	PopulationGenerator.defineHubs(vs, 50);
+    	assertEquals(50, vs.getHubs().size());
+    	assertTrue(vs.getHubs().contains("Hub 0001"));
+    	assertTrue(vs.getHubs().contains("Hub 0050"));
+    	for(String h: vs.getHubs())
+    		assertTrue(h, vs.estimateHourlyCapacity(h) > 0);
+
+    	Vaccines altro = new Vaccines();
+    	PopulationGenerator.defineHubs(altro, 50);
+    	for(String h: vs.getHubs())
+    		assertEquals(vs.estimateHourlyCapacity(h), altro.estimateHourlyCapacity(h));
+    }
+}
@@ -0,0 +1,156 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Collection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestQueryCache {
+    private Vaccines vs;
+    private MutableClock clock;
+
+    private static final class MutableClock extends Clock {
+    	Instant now;
+
+    	MutableClock(String now) {
+    		this.now = Instant.parse(now);
+    	}
+    	@Override
+    	public ZoneId getZone() {
+    		return ZoneOffset.UTC;
+    	}
+    	@Override
+    	public Clock withZone(ZoneId zone) {
+    		throw new UnsupportedOperationException();
+    	}
+    	@Override
+    	public Instant instant() {
+    		return now;
+    	}
+    }
+
+    @Before
+    public void setUp() throws VaccineException {
+    	clock = new MutableClock("2021-12-31T23:00:00Z");
+    	vs = new Vaccines();
+    	vs.setClock(clock);
+    	vs.addPerson("F1", "L1", "S1", 1991);	// 30 in 2021, 31 in 2022
+    	vs.addPerson("F2", "L2", "S2", 1950);
+    	vs.setAgeIntervals(31, 60);
+    	vs.defineHub("A");
+    	vs.setStaff("A", 1, 1, 1);
+    	vs.setHours(1, 1, 1, 1, 1, 1, 1);
+    	vs.enableCache(100);
+    }
+
+    @Test
+    public void testYearRollover() {
+    	Collection<String> giovani = vs.getInInterval("[0,31)");
+    	assertEquals(1, giovani.size());
+    	assertEquals(giovani, vs.getInInterval("[0,31)"));
+    	assertTrue(vs.getCache().getHits() > 0);
+
+    	clock.now = Instant.parse("2022-01-01T01:00:00Z");
+    	assertEquals(0, vs.getInInterval("[0,31)").size());
+    	assertEquals(1, vs.getInInterval("[31,60)").size());
+    }
+
+    @Test
+    public void testStatsAfterRollover() {
+    	vs.allocate("A", 0);
+    	assertEquals(0.5, vs.propAllocatedAge().get("[0,31)"), 1e-9);
+
+    	clock.now = Instant.parse("2022-01-01T01:00:00Z");
+    	assertEquals(0.0, vs.propAllocatedAge().get("[0,31)"), 1e-9);
+    	assertEquals(0.5, vs.propAllocatedAge().get("[31,60)"), 1e-9);
+    	assertEquals(0.5, vs.distributionAllocated().get("[31,60)"), 1e-9);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+    	assertEquals("S1,L1,F1", vs.getPerson("S1"));
+    	assertEquals("S1,L1,F1", vs.getPerson("S1"));
+    	assertEquals(null, vs.getPerson("none"));
+    	assertEquals(null, vs.getPerson("none"));	// missing people are not cached
+    	assertEquals(1, vs.getCache().getHits());
+    	assertEquals(3, vs.getCache().getMisses());
+    	assertEquals(0.25, vs.getCache().getHitRatio(), 1e-9);
+    }
+
+    @Test
+    public void testInvalidation() {
+    	vs.getInInterval("[0,31)");
+    	vs.propAllocated();
+    	vs.allocate("A", 0);		// only statistics change
+    	long hits=vs.getCache().getHits();
+    	vs.getInInterval("[0,31)");
+    	assertEquals(hits+1, vs.getCache().getHits());
+    	assertEquals(1.0, vs.propAllocated(), 1e-9);
+    	assertEquals(hits+1, vs.getCache().getHits());
+
+    	vs.addPerson("F3", "L3", "S3", 2000);	// interval members change
+    	assertEquals(2, vs.getInInterval("[0,31)").size());
+    	assertEquals(2.0/3, vs.propAllocated(), 1e-9);
+    	assertTrue(vs.getCache().getInvalidations() > 0);
+
+    	vs.setAgeIntervals(20, 40);
+    	assertEquals(2, vs.getInInterval("[20,40)").size());
+    	assertEquals(0, vs.getInInterval("[0,20)").size());
+    }
+
+    @Test
+    public void testAddKeepsOtherIntervals() {
+    	vs.getInInterval("[0,31)");
+    	vs.getInInterval("[31,60)");
+    	vs.getInInterval("[60,+)");
+    	vs.getInInterval("[31,60)");		// hit
+    	long hits=vs.getCache().getHits();
+    	long inv=vs.getCache().getInvalidations();
+
+    	vs.addPerson("F3", "L3", "S3", 1980);	// 41 in 2021
+    	assertEquals(1, vs.getInInterval("[0,31)").size());
+    	assertEquals(1, vs.getInInterval("[60,+)").size());
+    	assertEquals(hits+2, vs.getCache().getHits());
+    	assertEquals(inv+1, vs.getCache().getInvalidations());
+    	assertEquals(1, vs.getInInterval("[31,60)").size());
+    	assertEquals(hits+2, vs.getCache().getHits());
+
+    	assertEquals(1, vs.getInInterval(" [0,31) ").size());	// not parsed by the cache, dropped on every add
+    	vs.addPerson("F4", "L4", "S4", 2010);
+    	assertEquals(2, vs.getInInterval(" [0,31) ").size());
+    	assertEquals(2, vs.getInInterval("[0,31)").size());
+    }
+
+    @Test
+    public void testBounded() {
+    	for(int i=0; i<1000; i++)
+    		vs.addPerson("F", "L", "X"+i, 1980);
+    	for(int i=0; i<1000; i++)
+    		vs.getPerson("X"+i);
+    	assertTrue(vs.getCache().size() <= 100 + 64 + 8);
+    	vs.getPerson("X999");
+    	assertEquals(1, vs.getCache().getHits());
+    	vs.getPerson("X0");		// evicted
+    	assertEquals(1, vs.getCache().getHits());
+    }
+
+    @Test(expected=UnsupportedOperationException.class)
+    public void testReadOnly() {
+    	vs.getInInterval("[0,31)").clear();
+    }
+
+    @Test
+    public void testSetClock() {
+    	assertEquals(1, vs.getInInterval("[0,31)").size());
+    	vs.setClock(Clock.fixed(Instant.parse("2030-06-01T00:00:00Z"), ZoneOffset.UTC));
+    	assertEquals(0, vs.getInInterval("[0,31)").size());
+    }
+}
@@ -0,0 +1,75 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import it.polito.oop.vaccination.RegistrationPipeline;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestRegistrationPipeline {
+
+    @Test
+    public void testAddAndDuplicates() {
+    	Vaccines vs = new Vaccines();
+    	List<String> notified = new ArrayList<>();
+    	RegistrationPipeline rp = new RegistrationPipeline(vs, 100, 10);
+    	rp.setBatchListener(notified::addAll);
+    	for(int i=0; i<50; i++)
+    		assertTrue(rp.offer("F", "L", "S"+i, 1950));
+    	assertTrue(rp.offer("F", "L", "S0", 1950));
+    	rp.close();
+    	assertEquals(50, vs.countPeople());
+    	assertEquals(50, rp.getAdded());
+    	assertEquals(1, rp.getDuplicates());
+    	assertEquals(50, notified.size());
+    	assertFalse("closed pipeline", rp.offer("F", "L", "X", 1950));
+    }
+
+    @Test
+    public void testFailingListener() throws InterruptedException {
+    	Vaccines vs = new Vaccines();
+    	List<RuntimeException> errors = new ArrayList<>();
+    	RegistrationPipeline rp = new RegistrationPipeline(vs, 100, 1);
+    	rp.setBatchListener(l -> { throw new IllegalStateException("listener"); });
+    	rp.setErrorListener(errors::add);
+    	assertTrue(rp.offer("F", "L", "S0", 1950));
+    	for(int i=1; i<5; i++)
+    		assertTrue(rp.offer("F", "L", "S"+i, 1950, 1, TimeUnit.SECONDS));
+    	rp.close();
+    	assertEquals("worker must survive the listener", 5, vs.countPeople());
+    	assertEquals(5, rp.getFailures());
+    	assertEquals(5, errors.size());
+    }
+
+    @Test
+    public void testOffersRacingWithClose() throws Exception {
+    	for(int round=0; round<20; round++) {
+    		Vaccines vs = new Vaccines();
+    		RegistrationPipeline rp = new RegistrationPipeline(vs, 1<<16, 64);
+    		AtomicInteger ok = new AtomicInteger();
+    		ExecutorService ex = Executors.newFixedThreadPool(4);
+    		List<Future<?>> fs = new ArrayList<>();
+    		for(int t=0; t<4; t++) {
+    			int id=t;
+    			fs.add(ex.submit(() -> {
+    				for(int i=0; i<2000; i++)
+    					if(rp.offer("F", "L", id+"-"+i, 1950)) ok.incrementAndGet();
+    			}));
+    		}
+    		Thread.sleep(1);
+    		rp.close();
+    		for(Future<?> f: fs) f.get();
+    		ex.shutdown();
+    		assertEquals("accepted registrations must be added", ok.get(), vs.countPeople());
+    	}
+    }
+}
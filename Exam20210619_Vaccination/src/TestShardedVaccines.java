@@ -0,0 +1,191 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import it.polito.oop.vaccination.ShardedVaccines;
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestShardedVaccines {
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2021-06-19T10:00:00Z"), ZoneOffset.UTC);
+
+    private final List<Process> processes = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+    	for(Process p: processes) p.destroy();
+    }
+
+    private static String csv() {
+    	StringBuilder sb = new StringBuilder("SSN,LAST,FIRST,YEAR\n");
+    	for(int i=0; i<500; i++)
+    		sb.append("S").append(i).append(",L").append(i).append(",F").append(i).append(",").append(1930+i%80).append("\n");
+    	sb.append("S7,Dup,Dup,1950\n");
+    	return sb.toString();
+    }
+
+    private static void setUp(Vaccines v) throws IOException, VaccineException {
+    	v.setClock(CLOCK);
+    	v.setAgeIntervals(30, 60);
+    	v.defineHub("A");
+    	v.defineHub("B");
+    	v.setStaff("A", 1, 1, 1);
+    	v.setStaff("B", 2, 2, 2);
+    	v.setHours(1, 1, 1, 1, 1, 1, 1);
+    	v.loadPeople(new StringReader(csv()));
+    }
+
+    private static void setUp(ShardedVaccines v) throws IOException, VaccineException {
+    	v.setClock(CLOCK);
+    	v.setAgeIntervals(30, 60);
+    	v.defineHub("A");
+    	v.defineHub("B");
+    	v.setStaff("A", 1, 1, 1);
+    	v.setStaff("B", 2, 2, 2);
+    	v.setHours(1, 1, 1, 1, 1, 1, 1);
+    	v.loadPeople(new StringReader(csv()));
+    }
+
+    private static long total(List<Map<String, List<String>>> piano) {
+    	return piano.stream().flatMap(m -> m.values().stream()).mapToLong(List::size).sum();
+    }
+
+    @Test
+    public void testSameAsSingle() throws IOException, VaccineException {
+    	Vaccines v = new Vaccines();
+    	setUp(v);
+    	try(ShardedVaccines s = new ShardedVaccines(3)) {
+    		setUp(s);
+    		assertEquals(v.countPeople(), s.countPeople());
+    		assertEquals(v.getPerson("S42"), s.getPerson("S42"));
+    		assertEquals(v.getAge("S42"), s.getAge("S42"));
+    		for(String intv: v.getAgeIntervals())
+    			assertEquals(new HashSet<>(v.getInInterval(intv)), new HashSet<>(s.getInInterval(intv)));
+    		assertEquals(v.getAvailable(), s.getAvailable());
+    		assertEquals(total(v.weekAllocate()), total(s.weekAllocate()));
+    		assertEquals(v.propAllocated(), s.propAllocated(), 1e-9);
+    	}
+    }
+
+    @Test
+    public void testAllocationAndStats() throws IOException, VaccineException {
+    	try(ShardedVaccines s = new ShardedVaccines(4)) {
+    		setUp(s);
+    		List<String> a = s.allocate("B", 0);
+    		assertEquals(s.getDailyAvailable("B", 0), a.size());
+    		assertEquals(a.size(), new HashSet<>(a).size());
+    		assertEquals((double)a.size()/s.countPeople(), s.propAllocated(), 1e-9);
+    		double tot = s.distributionAllocated().values().stream().mapToDouble(Double::doubleValue).sum();
+    		assertEquals(1.0, tot, 1e-9);
+    		s.clearAllocation();
+    		assertEquals(0.0, s.propAllocated(), 1e-9);
+    	}
+    }
+
+    @Test
+    public void testWeekAllocate() throws IOException, VaccineException {
+    	Vaccines v = new Vaccines();
+    	setUp(v);
+    	try(ShardedVaccines s = new ShardedVaccines(3)) {
+    		setUp(s);
+    		List<String> a = s.allocate("B", 0);
+    		v.allocate("B", 0);
+    		List<Map<String, List<String>>> ps = s.weekAllocate(), pv = v.weekAllocate();
+    		assertEquals(a.size(), ps.get(0).get("B").size());	// no place beyond the capacity
+    		List<String> tutti = new ArrayList<>();
+    		for(int d=0; d<7; d++)
+    			for(String h: new String[] {"A", "B"}) {
+    				assertEquals(h+d, pv.get(d).get(h).size(), ps.get(d).get(h).size());
+    				tutti.addAll(ps.get(d).get(h));
+    			}
+    		assertEquals(tutti.size(), new HashSet<>(tutti).size());
+    		assertEquals(v.propAllocated(), s.propAllocated(), 1e-9);
+    		assertEquals(ps, s.weekAllocate());	// nothing left to allocate
+    	}
+    }
+
+    @Test
+    public void testBatchedLoad() throws IOException, VaccineException {
+    	StringBuilder sb = new StringBuilder("SSN,LAST,FIRST,YEAR\n");
+    	for(int i=0; i<10000; i++) {
+    		sb.append("S").append(i).append(",L,F,").append(1930+i%80).append("\n");
+    		if(i%1000==999) sb.append("S").append(i-500).append(",Dup,Dup,1950\n");	// in the previous batch
+    		if(i%3000==0) sb.append("bad line\n");
+    	}
+    	List<Integer> attesi = new ArrayList<>(), errori = new ArrayList<>();
+    	Vaccines v = new Vaccines();
+    	v.setLoadListener((riga, t) -> attesi.add(riga));
+    	try(ShardedVaccines s = new ShardedVaccines(3)) {
+    		s.setLoadListener((riga, t) -> errori.add(riga));
+    		assertEquals(v.loadPeople(new StringReader(sb.toString())), s.loadPeople(new StringReader(sb.toString())));
+    		assertEquals(10000, s.countPeople());
+    		assertEquals(14, attesi.size());
+    		assertEquals(new HashSet<>(attesi), new HashSet<>(errori));
+    		assertEquals("S9999,L,F", s.getPerson("S9999"));
+    	}
+    }
+
+    @Test(expected=VaccineException.class)
+    public void testDuplicateHub() throws VaccineException {
+    	try(ShardedVaccines s = new ShardedVaccines(2)) {
+    		s.defineHub("A");
+    		s.defineHub("A");
+    	}
+    }
+
+    private InetSocketAddress startShard() throws IOException {
+    	String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    	Process p = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+    			"it.polito.oop.vaccination.ShardServer", "0")
+    			.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    	processes.add(p);
+    	BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()));
+    	String riga = r.readLine();
+    	assertTrue("Shard server did not start: " + riga, riga!=null && riga.startsWith("PORT "));
+    	return new InetSocketAddress("127.0.0.1", Integer.parseInt(riga.substring(5).trim()));
+    }
+
+    @Test
+    public void testMultiProcess() throws IOException, VaccineException {
+    	List<InetSocketAddress> nodes = new ArrayList<>();
+    	nodes.add(startShard());
+    	nodes.add(startShard());
+    	try(ShardedVaccines remoto = new ShardedVaccines(nodes);
+    		ShardedVaccines locale = new ShardedVaccines(2)) {
+    		setUp(remoto);
+    		setUp(locale);
+    		assertEquals(500, remoto.countPeople());
+    		assertEquals(locale.getPerson("S42"), remoto.getPerson("S42"));
+    		assertNull(remoto.getPerson("none"));
+    		assertEquals(locale.getAge("S42"), remoto.getAge("S42"));
+    		for(String intv: locale.getAgeIntervals())
+    			assertEquals(new HashSet<>(locale.getInInterval(intv)), new HashSet<>(remoto.getInInterval(intv)));
+    		assertEquals(locale.weekAllocate(), remoto.weekAllocate());
+    		assertEquals(locale.propAllocated(), remoto.propAllocated(), 1e-9);
+    		assertEquals(locale.propAllocatedAge(), remoto.propAllocatedAge());
+    		try {
+    			remoto.setStaff("none", 1, 1, 1);
+    			throw new AssertionError("Missing exception for unknown hub");
+    		} catch (VaccineException e) {
+    			// expected
+    		}
+    	}
+    }
+}
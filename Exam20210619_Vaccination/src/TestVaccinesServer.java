@@ -0,0 +1,147 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.oop.vaccination.CsvFormat;
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+import it.polito.oop.vaccination.VaccinesServer;
+
+public final class TestVaccinesServer {
+    private Vaccines vs;
+    private VaccinesServer server;
+
+    @Before
+    public void setUp() throws IOException, VaccineException {
+    	vs = new Vaccines();
+    	for(int i=0; i<1000; i++)
+    		vs.addPerson("F"+i, "L"+i, "S"+i, 1930+i%80);
+    	vs.setAgeIntervals(30,60);
+    	vs.defineHub("Hub 1");
+    	vs.setStaff("Hub 1", 1, 1, 1);
+    	vs.setHours(1,1,1,1,1,1,1);
+    	server = new VaccinesServer(vs, new InetSocketAddress("127.0.0.1", 0), 50);
+    	server.start();
+    }
+
+    @After
+    public void tearDown() {
+    	server.stop();
+    }
+
+    private String[] call(String method, String path) throws IOException {
+    	HttpURLConnection c = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+    	c.setRequestMethod(method);
+    	int status = c.getResponseCode();
+    	InputStream in = status<400 ? c.getInputStream() : c.getErrorStream();
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	if(in!=null) {
+    		byte[] b = new byte[8192];
+    		for(int n; (n=in.read(b))>0; ) out.write(b, 0, n);
+    		in.close();
+    	}
+    	return new String[] {String.valueOf(status), new String(out.toByteArray(), StandardCharsets.UTF_8)};
+    }
+
+    @Test
+    public void testQueries() throws IOException {
+    	assertEquals("200", call("GET", "/person?ssn=S1")[0]);
+    	assertEquals("S1,L1,F1", call("GET", "/person?ssn=S1")[1]);
+    	assertEquals("404", call("GET", "/person?ssn=nobody")[0]);
+    	assertEquals(String.valueOf(vs.getAge("S1")), call("GET", "/age?ssn=S1")[1]);
+    	String[] r = call("GET", "/interval?label=%5B60,%2B)");
+    	assertEquals("200", r[0]);
+    	assertEquals(vs.getInInterval("[60,+)").size(), r[1].split("\n").length);
+    	assertTrue(call("GET", "/available")[1].startsWith("{\"Hub 1\":[10,"));
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+    	String[] r = call("GET", "/interval?label=bogus");
+    	assertEquals("400", r[0]);
+    	assertEquals("no internal details", "Missing or wrong label", r[1]);
+    	assertEquals("400", call("POST", "/allocate?hub=Hub%201&day=x")[0]);
+    	assertEquals("400", call("POST", "/allocate?hub=nohub&day=1")[0]);
+    	assertEquals("405", call("GET", "/allocate?hub=Hub%201&day=1")[0]);
+    }
+
+    @Test
+    public void testUnstaffedHub() throws IOException, VaccineException {
+    	vs.defineHub("Hub 2");
+    	assertEquals("400", call("POST", "/allocate?hub=Hub%202&day=1")[0]);
+    	assertEquals(0.0, vs.propAllocated(), 0.0);
+    }
+
+    @Test
+    public void testLazyPeople() throws Exception {
+    	assertEquals("200", call("POST", "/allocate?hub=Hub%201&day=1")[0]);
+    	StringBuilder sb = new StringBuilder("SSN,LAST,FIRST,YEAR\n");
+    	for(int i=0; i<200; i++)
+    		sb.append("Z").append(i).append(",L,F,").append(1940+i%60).append("\n");
+    	Path file = Files.createTempFile("people", ".csv");
+    	try {
+    		Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+    		synchronized(vs) { vs.loadPeopleLazy(file, CsvFormat.DEFAULT); }
+    		Thread.sleep(100);	// past the staleness
+    		assertEquals("Z5,L,F", call("GET", "/person?ssn=Z5")[1]);
+    		assertEquals("404", call("GET", "/person?ssn=Z200")[0]);
+    		String r = call("GET", "/interval?label=%5B60,%2B)")[1];
+    		assertTrue(r.contains("Z0\n"));
+    		assertTrue(call("GET", "/stats")[1].startsWith("{\"propAllocated\":" + 10.0/1200 + ","));
+    		assertEquals(vs.getInInterval("[60,+)").size(), r.split("\n").length);
+    	} finally {
+    		Files.deleteIfExists(file);
+    	}
+    }
+
+    @Test
+    public void testAllocateIsVisible() throws IOException {
+    	String[] r = call("POST", "/allocate?hub=Hub%201&day=1");
+    	assertEquals("200", r[0]);
+    	assertEquals(10, r[1].split("\n").length);
+    	assertTrue(call("GET", "/stats")[1].startsWith("{\"propAllocated\":0.01,"));
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+    	ExecutorService ex = Executors.newFixedThreadPool(16);
+    	List<Future<Integer>> fs = new ArrayList<>();
+    	for(int t=0; t<16; t++) {
+    		int id=t;
+    		fs.add(ex.submit(() -> {
+    			int ok=0;
+    			for(int i=0; i<100; i++)
+    				if("200".equals(call("GET", "/person?ssn=S"+(id*100+i)%1000)[0])) ok++;
+    			return ok;
+    		}));
+    	}
+    	// registrations made meanwhile under the monitor become visible
+    	for(int i=0; i<100; i++)
+    		synchronized(vs) { vs.addPerson("N", "N", "N"+i, 2000); }
+    	for(Future<Integer> f: fs)
+    		assertEquals(100, (int)f.get());
+    	ex.shutdown();
+    	long end = System.currentTimeMillis()+2000;
+    	while(!"200".equals(call("GET", "/person?ssn=N99")[0]) && System.currentTimeMillis()<end)
+    		Thread.sleep(10);
+    	assertEquals("200", call("GET", "/person?ssn=N99")[0]);
+    }
+}
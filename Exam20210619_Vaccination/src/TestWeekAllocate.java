@@ -0,0 +1,144 @@
+import static org.junit.Assert.assertEquals;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.oop.vaccination.PopulationGenerator;
+import it.polito.oop.vaccination.ShardedVaccines;
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestWeekAllocate {
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2021-06-19T10:00:00Z"), ZoneOffset.UTC);
+
+    private Vaccines vs;
+
+    @Before
+    public void setUp() throws VaccineException {
+    	vs = new Vaccines();
+    	vs.setClock(CLOCK);
+    	// 25 people over 60, enough for two hubs on Monday and half a hub on Tuesday
+    	for(int i=0; i<15; i++)
+    		vs.addPerson("F"+i, "L"+i, "Y"+i, 1950);
+    	for(int i=0; i<10; i++)
+    		vs.addPerson("F"+i, "L"+i, "O"+i, 1920);
+    	vs.setAgeIntervals(30, 60);
+    	vs.defineHub("A");
+    	vs.defineHub("B");
+    	vs.setStaff("A", 1, 1, 1);	// 10 per hour
+    	vs.setStaff("B", 1, 1, 1);
+    	vs.setHours(1, 1, 1, 1, 1, 1, 1);
+    }
+
+    private static long old(List<String> l) {
+    	return l.stream().filter(s -> s.startsWith("O")).count();
+    }
+
+    @Test
+    public void testReproducible() {
+    	List<Map<String, List<String>>> piano = vs.weekAllocate();
+    	Vaccines f = vs.fork();
+    	f.clearAllocation();
+    	vs.clearAllocation();
+    	assertEquals(piano, vs.weekAllocate());
+    	assertEquals(piano, f.weekAllocate());
+    }
+
+    @Test
+    public void testStartingHubRotates() {
+    	List<Map<String, List<String>>> piano = vs.weekAllocate();
+    	assertEquals(10, old(piano.get(0).get("A")));	// oldest first
+    	assertEquals(10, piano.get(0).get("B").size());
+    	assertEquals(5, piano.get(1).get("B").size());
+    	assertEquals(0, piano.get(1).get("A").size());
+    }
+
+    @Test
+    public void testShardedStartingHubRotates() throws VaccineException {
+    	try(ShardedVaccines s = new ShardedVaccines(2)) {
+    		s.setClock(CLOCK);
+    		for(int i=0; i<25; i++)
+    			s.addPerson("F"+i, "L"+i, "S"+i, 1950);
+    		s.setAgeIntervals(30, 60);
+    		s.defineHub("A");
+    		s.defineHub("B");
+    		s.setStaff("A", 1, 1, 1);
+    		s.setStaff("B", 1, 1, 1);
+    		s.setHours(1, 1, 1, 1, 1, 1, 1);
+    		List<Map<String, List<String>>> piano = s.weekAllocate();
+    		assertEquals(new ArrayList<>(piano.get(1).keySet()), new ArrayList<>(piano.get(0).keySet()));
+    		assertEquals(10, piano.get(0).get("A").size());
+    		assertEquals(10, piano.get(0).get("B").size());
+    		assertEquals(5, piano.get(1).get("B").size());
+    		assertEquals(0, piano.get(1).get("A").size());
+    	}
+    }
+
+    private static List<String> all(List<Map<String, List<String>>> piano) {
+    	List<String> l = new ArrayList<>();
+    	for(Map<String, List<String>> m: piano)
+    		for(List<String> x: m.values()) l.addAll(x);
+    	return l;
+    }
+
+    @Test
+    public void testFewerBreaks() throws VaccineException {
+    	Vaccines v = new Vaccines();
+    	v.setClock(CLOCK);
+    	for(int i=0; i<100; i++)
+    		v.addPerson("F"+i, "L"+i, "S"+i, 1930+i%80);
+    	v.defineHub("A");
+    	v.setStaff("A", 1, 1, 1);
+    	v.setHours(1, 1, 1, 1, 1, 1, 1);
+    	v.setAgeIntervals(30, 40, 50, 60, 70);
+    	v.setAgeIntervals(40, 60);
+    	List<String> l = all(v.weekAllocate());
+    	assertEquals(70, l.size());
+    	assertEquals(70, new HashSet<>(l).size());
+    }
+
+    @Test
+    public void testOverlappingIntervals() throws VaccineException {
+    	vs.setAgeIntervals(80, 30);		// [0,80) and [30,+) overlap
+    	List<String> l = all(vs.weekAllocate());
+    	assertEquals(25, l.size());
+    	assertEquals(25, new HashSet<>(l).size());
+    }
+
+    @Test
+    public void testParallel() throws VaccineException {
+    	Vaccines v = new Vaccines();
+    	v.setClock(CLOCK);
+    	for(int i=0; i<20000; i++)
+    		v.addPerson("F"+i, "L"+i, "S"+i, 1920+i%90);
+    	v.setAgeIntervals(20, 40, 60, 80);
+    	PopulationGenerator.defineHubs(v, 40);
+    	v.setHours(1, 2, 3, 4, 5, 6, 7);
+    	List<Map<String, List<String>>> seq = v.weekAllocate(false);
+    	for(int run=0; run<5; run++) {
+    		v.clearAllocation();
+    		List<Map<String, List<String>>> par = v.weekAllocate(true);
+    		for(int d=0; d<7; d++) {
+    			Set<String> a = new HashSet<>(), b = new HashSet<>();
+    			for(String h: seq.get(d).keySet()) {
+    				assertEquals(seq.get(d).get(h).size(), par.get(d).get(h).size());
+    				a.addAll(seq.get(d).get(h));
+    				b.addAll(par.get(d).get(h));
+    			}
+    			assertEquals(a, b);
+    		}
+    		List<String> l = all(par);
+    		assertEquals(l.size(), new HashSet<>(l).size());
+    		assertEquals((double)l.size()/v.countPeople(), v.propAllocated(), 1e-9);
+    	}
+    }
+}
@@ -0,0 +1,123 @@
+package it.polito.oop.vaccination;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Number of allocated and unallocated people for each birth year,
+ * see {@link Vaccines#getAgeHistogram()}.
+ * <p>
+ * The counts are computed with a single scan of the column of
+ * birth years. Chunks of 64K rows are counted in parallel. The loop
+ * reads the allocation bits a word at a time and does not branch on
+ * them.
+ */
+public class AgeHistogram {
+	private static final int CHUNK = 1<<16;	// multiple of 64, the bits in a word
+
+	private final int minYear;
+	private final int currentYear;
+	private final long[] counts;	// [2*(year-minYear)] unallocated, [+1] allocated
+
+	private AgeHistogram(int minYear, int currentYear, long[] counts) {
+		this.minYear = minYear;
+		this.currentYear = currentYear;
+		this.counts = counts;
+	}
+
+	/**
+	 * Column of the birth years of the people, indexed by row.
+	 * Rows are only appended, so a refresh just copies the new ones.
+	 */
+	static class Column {
+		int[] years = new int[0];
+		int n;
+		int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+
+		void refresh(List<Person> rows) {
+			int size=rows.size();
+			if(size<=n) return;
+			if(size>years.length) years=java.util.Arrays.copyOf(years, Math.max(size, years.length*2));
+			for(; n<size; n++) {
+				int y=rows.get(n).year;
+				years[n]=y;
+				if(y<min) min=y;
+				if(y>max) max=y;
+			}
+		}
+	}
+
+	static AgeHistogram compute(Column c, BitSet allocated, int currentYear, boolean parallel) {
+		if(c.n==0) return new AgeHistogram(currentYear, currentYear, new long[0]);
+		int[] years=c.years;
+		int n=c.n, min=c.min, width=2*(c.max-min+1);
+		long[] bits=allocated.toLongArray();
+		int chunks=(n+CHUNK-1)/CHUNK;
+		IntStream s=IntStream.range(0, chunks);
+		if(parallel) s=s.parallel();
+		return new AgeHistogram(min, currentYear, s.mapToObj(k -> {
+			int[] h = new int[width];
+			int from=k*CHUNK, to=Math.min(n, from+CHUNK);
+			for(int i=from; i<to; i++) {
+				int w=i>>>6;
+				long word = w<bits.length ? bits[w] : 0L;
+				h[2*(years[i]-min) + (int)((word>>>i) & 1L)]++;	// shift uses the low 6 bits of i
+			}
+			return h;
+		}).collect(() -> new long[width], (acc, h) -> {
+			for(int j=0; j<width; j++) acc[j]+=h[j];
+		}, (a, b) -> {
+			for(int j=0; j<width; j++) a[j]+=b[j];
+		}));
+	}
+
+	public int getMinYear() {
+		return minYear;
+	}
+	public int getMaxYear() {
+		return minYear + counts.length/2 - 1;
+	}
+	public long getAllocated(int year) {
+		int k=year-minYear;
+		return k<0 || 2*k>=counts.length ? 0 : counts[2*k+1];
+	}
+	public long getUnallocated(int year) {
+		int k=year-minYear;
+		return k<0 || 2*k>=counts.length ? 0 : counts[2*k];
+	}
+	public long getCount(int year) {
+		return getAllocated(year) + getUnallocated(year);
+	}
+
+	/**
+	 * Counts of the people whose age is in {@code [from,to)},
+	 * {@code to==-1} meaning no upper limit.
+	 *
+	 * @return the pair allocated, unallocated
+	 */
+	public long[] getInAges(int from, int to) {
+		long[] r = new long[2];
+		int hi=currentYear-from, lo= to==-1 ? minYear : currentYear-to+1;
+		for(int y=Math.max(lo, minYear); y<=Math.min(hi, getMaxYear()); y++) {
+			r[0]+=getAllocated(y);
+			r[1]+=getUnallocated(y);
+		}
+		return r;
+	}
+
+	/**
+	 * Counts per age, from the youngest to the oldest person.
+	 *
+	 * @return map age to the pair allocated, unallocated
+	 */
+	public Map<Integer, long[]> byAge() {
+		Map<Integer, long[]> m = new LinkedHashMap<>();
+		for(int y=getMaxYear(); y>=minYear; y--)
+			if(getCount(y)>0)
+				m.put(currentYear-y, new long[] {getAllocated(y), getUnallocated(y)});
+		return m;
+	}
+}
@@ -0,0 +1,110 @@
+package it.polito.oop.vaccination;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ring buffer of allocation decisions, see {@link Vaccines#enableAudit(int)}.
+ * <p>
+ * Each record tells which hub, day, age interval and pass of
+ * {@link Vaccines#allocate} chose a person. Records are stored in
+ * parallel int arrays, so logging an allocation costs a few array writes;
+ * when the buffer is full the oldest records are overwritten.
+ * The log also remembers which intervals were considered by an allocation
+ * in the current round, to tell people who did not get a place from
+ * people who were never considered.
+ */
+class AllocationLog {
+	static final int QUOTA = 1;	// 40% quota of the interval
+	static final int FILL = 2;	// remaining places
+
+	final int capacity;
+	private final int[] row, hub, day, inizio, fine, pass, round;
+	private long next;	// total records written
+	private int giro = 1;	// incremented by clearAllocation
+	private final Map<String, Integer> index = new HashMap<>();
+	private final List<String> names = new ArrayList<>();
+	private final Set<Long> visti = new HashSet<>();	// intervals considered in this round
+
+	AllocationLog(int capacity) {
+		this.capacity = capacity;
+		row = new int[capacity];
+		hub = new int[capacity];
+		day = new int[capacity];
+		inizio = new int[capacity];
+		fine = new int[capacity];
+		pass = new int[capacity];
+		round = new int[capacity];
+	}
+
+	/**
+	 * @return the code of the hub to be used in {@link #add}
+	 */
+	int hub(String name) {
+		Integer k=index.get(name);
+		if(k==null) {
+			k=names.size();
+			index.put(name, k);
+			names.add(name);
+		}
+		return k;
+	}
+
+	void add(int r, int h, int d, Interval i, int p) {
+		int k=(int)(next++ % capacity);
+		row[k]=r;
+		hub[k]=h;
+		day[k]=d;
+		inizio[k]=i.inizio;
+		fine[k]=i.fine;
+		pass[k]=p;
+		round[k]=giro;
+	}
+
+	void newRound() {
+		giro++;
+		visti.clear();
+	}
+
+	/**
+	 * An allocation of the current round considered the people of an interval.
+	 */
+	void visit(Interval i) {
+		visti.add(key(i));
+	}
+
+	boolean visited(Interval i) {
+		return visti.contains(key(i));
+	}
+
+	private static long key(Interval i) {
+		return (long)i.inizio<<32 | (i.fine & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Number of records still in the buffer.
+	 */
+	int size() {
+		return (int)Math.min(next, capacity);
+	}
+
+	/**
+	 * Descriptions of the records of a person, oldest first.
+	 */
+	List<String> records(int r) {
+		List<String> l = new ArrayList<>();
+		for(long j=next-size(); j<next; j++) {
+			int k=(int)(j % capacity);
+			if(row[k]!=r) continue;
+			String f = fine[k]==-1 ? "+" : ""+fine[k];
+			l.add("round " + round[k] + ": hub " + names.get(hub[k]) + ", day " + day[k]
+					+ ", interval [" + inizio[k] + "," + f + "), "
+					+ (pass[k]==QUOTA ? "interval quota" : "remaining places"));
+		}
+		return l;
+	}
+}
@@ -0,0 +1,100 @@
+package it.polito.oop.vaccination;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Index of the people rows by birth year.
+ * <p>
+ * Age intervals are mapped to ranges of birth years only when queried,
+ * so a change of the current year does not require any update.
+ */
+class BirthYears {
+	static class Bucket {
+		final int year;
+		final int index;	// dense index, for per-year counters
+		int[] rows = new int[16];
+		int n;
+
+		Bucket(int year, int index) {
+			this.year = year;
+			this.index = index;
+		}
+
+		Bucket(Bucket b) {
+			this(b.year, b.index);
+			rows = Arrays.copyOf(b.rows, Math.max(b.n, 16));
+			n = b.n;
+		}
+
+		/**
+		 * Shares the rows of {@code b}: entries below {@code n}
+		 * never change, later adds to {@code b} are not seen.
+		 */
+		Bucket(Bucket b, int n) {
+			this(b.year, b.index);
+			rows = b.rows;
+			this.n = n;
+		}
+
+		void add(int row) {
+			if(n==rows.length) rows=Arrays.copyOf(rows, n*2);
+			rows[n++]=row;
+		}
+	}
+
+	private final TreeMap<Integer, Bucket> buckets = new TreeMap<>();
+
+	void add(Person p) {
+		Bucket b=buckets.get(p.year);
+		if(b==null) {
+			b=new Bucket(p.year, buckets.size());
+			buckets.put(p.year, b);
+		}
+		b.add(p.row);
+	}
+
+	Bucket get(int year) {
+		return buckets.get(year);
+	}
+
+	/**
+	 * Number of distinct birth years, an upper bound to {@link Bucket#index}.
+	 */
+	int size() {
+		return buckets.size();
+	}
+
+	/**
+	 * Buckets of the people whose age in {@code currentYear} is in the interval.
+	 */
+	Collection<Bucket> range(Interval i, int currentYear) {
+		int hi=currentYear-i.inizio;
+		if(i.fine==-1)
+			return buckets.headMap(hi, true).values();
+		int lo=currentYear-i.fine;
+		if(lo>=hi)
+			return buckets.subMap(hi, false, hi, false).values();
+		return buckets.subMap(lo, false, hi, true).values();
+	}
+
+	/**
+	 * Read-only copy of the index as it is now, sharing the rows
+	 * of the buckets, see {@link Vaccines#view()}.
+	 */
+	BirthYears view() {
+		BirthYears c = new BirthYears();
+		for(Map.Entry<Integer, Bucket> e: buckets.entrySet())
+			c.buckets.put(e.getKey(), new Bucket(e.getValue(), e.getValue().n));
+		return c;
+	}
+
+	BirthYears copy() {
+		BirthYears c = new BirthYears();
+		for(Map.Entry<Integer, Bucket> e: buckets.entrySet())
+			c.buckets.put(e.getKey(), new Bucket(e.getValue()));
+		return c;
+	}
+}
@@ -0,0 +1,148 @@
+package it.polito.oop.vaccination;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Total and used places of every hub on every day of the week.
+ * <p>
+ * Counters are kept in flat arrays indexed by {@code hub*7+day} and are
+ * updated when staff, hours or allocations change, so availability
+ * queries never recompute capacities.
+ * Days outside {@code 0..6} are rejected with an
+ * {@link IllegalArgumentException}, they would address another hub.
+ */
+class CapacityLedger {
+	private final Map<String, Integer> index = new HashMap<>();
+	private final List<String> names = new ArrayList<>();
+	private int[] total = new int[7*16];
+	private int[] used = new int[7*16];
+
+	CapacityLedger() {
+	}
+
+	CapacityLedger(CapacityLedger c) {
+		index.putAll(c.index);
+		names.addAll(c.names);
+		total = c.total.clone();
+		used = c.used.clone();
+	}
+
+	/**
+	 * @return the index of the hub or {@code -1} if undefined
+	 */
+	int hub(String name) {
+		Integer k=index.get(name);
+		return k==null ? -1 : k;
+	}
+
+	void addHub(String name) {
+		int k=names.size();
+		index.put(name, k);
+		names.add(name);
+		if(7*(k+1)>total.length) {
+			total=Arrays.copyOf(total, total.length*2);
+			used=Arrays.copyOf(used, used.length*2);
+		}
+	}
+
+	/**
+	 * Sets the daily totals of a hub from its hourly capacity.
+	 */
+	void setTotal(int k, List<Integer> hours, int capacity) {
+		for(int d=0; d<7; d++)
+			total[k*7+d] = d<hours.size() ? hours.get(d)*capacity : 0;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the day is outside {@code 0..6}
+	 */
+	static int day(int d) {
+		if(d<0 || d>6) throw new IllegalArgumentException("Wrong day " + d);
+		return d;
+	}
+
+	private static int slot(int k, int d) {
+		return k*7+day(d);
+	}
+
+	void use(int k, int d, int n) {
+		used[slot(k, d)]+=n;
+	}
+
+	void clear() {
+		Arrays.fill(used, 0);
+	}
+
+	int total(int k, int d) {
+		return total[slot(k, d)];
+	}
+
+	int used(int k, int d) {
+		return used[slot(k, d)];
+	}
+
+	int free(int k, int d) {
+		int i=slot(k, d);
+		return Math.max(0, total[i]-used[i]);
+	}
+
+	/**
+	 * Free places of some hubs on a day.
+	 */
+	long free(Iterable<String> hubs, int d) {
+		day(d);
+		long s=0;
+		for(String h: hubs) {
+			int k=hub(h);
+			if(k>=0) s+=free(k, d);
+		}
+		return s;
+	}
+
+	/**
+	 * Free places of some hubs in the whole week.
+	 */
+	long free(Iterable<String> hubs) {
+		long s=0;
+		for(String h: hubs) {
+			int k=hub(h);
+			if(k<0) continue;
+			for(int d=0; d<7; d++) s+=free(k, d);
+		}
+		return s;
+	}
+
+	/**
+	 * The {@code n} hubs with most free places on a day, in decreasing
+	 * order of free places and then by name; hubs without free places
+	 * are not included.
+	 */
+	List<String> top(int d, int n) {
+		day(d);
+		// min-heap of the best n hubs found so far
+		PriorityQueue<Integer> best = new PriorityQueue<>(Math.max(1, n), (a,b) -> compare(b, a, d));
+		for(int k=0; k<names.size() && n>0; k++) {
+			if(free(k, d)==0) continue;
+			if(best.size()<n) best.add(k);
+			else if(compare(k, best.peek(), d)<0) {
+				best.poll();
+				best.add(k);
+			}
+		}
+		String[] res = new String[best.size()];
+		for(int i=res.length-1; i>=0; i--)
+			res[i]=names.get(best.poll());
+		return Arrays.asList(res);
+	}
+
+	// negative when hub a comes before hub b
+	private int compare(int a, int b, int d) {
+		int c=Integer.compare(free(b, d), free(a, d));
+		return c!=0 ? c : names.get(a).compareTo(names.get(b));
+	}
+}
@@ -0,0 +1,71 @@
+package it.polito.oop.vaccination;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Bounded queue of people rows that several producers fill and several
+ * hubs claim from concurrently.
+ * <p>
+ * Producers reserve a slot moving the tail with an atomic increment and
+ * then publish the row; claims move the head with compare-and-set, so no
+ * lock is taken and every row is handed to exactly one claimer, in the
+ * order its slot was reserved. A claim waits only for slots reserved by
+ * a producer that has not published them yet.
+ */
+class ClaimQueue {
+	private final AtomicIntegerArray rows;	// row+1, 0 until published
+	private final AtomicInteger tail = new AtomicInteger();
+	private final AtomicInteger head = new AtomicInteger();
+
+	/**
+	 * @param capacity maximum number of rows ever added
+	 */
+	ClaimQueue(int capacity) {
+		rows = new AtomicIntegerArray(capacity);
+	}
+
+	/**
+	 * Appends a row.
+	 *
+	 * @throws IllegalStateException if the capacity is exceeded
+	 */
+	void add(int row) {
+		int i=tail.getAndIncrement();
+		if(i>=rows.length()) throw new IllegalStateException("Queue full");
+		rows.lazySet(i, row+1);
+	}
+
+	/**
+	 * Claims at most {@code n} rows, storing them in {@code into} from {@code from}.
+	 *
+	 * @return number of rows claimed
+	 */
+	int claim(int n, int[] into, int from) {
+		for(;;) {
+			int h=head.get();
+			int k=Math.min(n, end()-h);
+			if(k<=0) return 0;
+			if(head.compareAndSet(h, h+k)) {
+				for(int i=0; i<k; i++) {
+					int v;
+					while((v=rows.get(h+i))==0)
+						Thread.yield();	// reserved, not published yet
+					into[from+i]=v-1;
+				}
+				return k;
+			}
+		}
+	}
+
+	/**
+	 * Number of rows not claimed yet.
+	 */
+	int remaining() {
+		return Math.max(0, end()-head.get());
+	}
+
+	private int end() {
+		return Math.min(tail.get(), rows.length());
+	}
+}
@@ -0,0 +1,231 @@
+package it.polito.oop.vaccination;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Dialect used by {@link Vaccines#loadPeople(java.io.Reader, CsvFormat)}.
+ * <p>
+ * Columns are looked up by name in the header line, so the
+ * order of {@code SSN,LAST,FIRST,YEAR} in the file is not relevant
+ * and additional columns are ignored.
+ */
+public class CsvFormat {
+	public static final CsvFormat DEFAULT = new CsvFormat(',', '"');
+	public static final CsvFormat SEMICOLON = new CsvFormat(';', '"');
+	public static final CsvFormat TAB = new CsvFormat('\t', '"');
+
+	static final String[] COLUMNS = {"SSN", "LAST", "FIRST", "YEAR"};
+	static final int SSN=0, LAST=1, FIRST=2, YEAR=3;
+
+	char separator;
+	char quote;
+
+	/**
+	 * Receives the people read from a CSV file.
+	 */
+	interface Target {
+		/**
+		 * @return {@code false} if the person could not be added (duplicate SSN)
+		 */
+		boolean add(String first, String last, String ssn, int year);
+	}
+
+	/**
+	 * Receives the people read from a CSV file in batches, for
+	 * receivers where each call has a high fixed cost.
+	 */
+	interface BatchTarget {
+		/**
+		 * @return for each person whether it was added
+		 */
+		boolean[] add(List<Person> people);
+	}
+
+	private interface Row {
+		boolean add(int riga, String testo, String first, String last, String ssn, int year);
+	}
+
+	/**
+	 * @param separator field separator
+	 * @param quote quote character, fields enclosed in quotes may contain
+	 * 				the separator and doubled quotes stand for a single quote
+	 */
+	public CsvFormat(char separator, char quote) {
+		super();
+		this.separator = separator;
+		this.quote = quote;
+	}
+
+	public char getSeparator() {
+		return separator;
+	}
+	public char getQuote() {
+		return quote;
+	}
+
+	/**
+	 * Reads people from CSV content, see {@link Vaccines#loadPeople(Reader, CsvFormat)}.
+	 *
+	 * @param lsnr listener for malformed or rejected lines, may be {@code null}
+	 * @param target receiver of the people read
+	 * @return number of people accepted by the target
+	 */
+	long read(Reader in, BiConsumer<Integer,String> lsnr, Target target) throws IOException, VaccineException {
+		return parse(in, lsnr, (i, riga, first, last, ssn, year) -> target.add(first, last, ssn, year));
+	}
+
+	/**
+	 * Reads people from CSV content passing them to the target {@code batch}
+	 * at a time; lines rejected by the target are notified when their batch
+	 * is passed, after the malformed lines read meanwhile.
+	 *
+	 * @param lsnr listener for malformed or rejected lines, may be {@code null}
+	 * @param target receiver of the people read
+	 * @param batch number of people passed to each call of the target
+	 * @return number of people accepted by the target
+	 */
+	long read(Reader in, BiConsumer<Integer,String> lsnr, BatchTarget target, int batch) throws IOException, VaccineException {
+		List<Person> persone = new ArrayList<>(batch);
+		List<Integer> righe = new ArrayList<>(batch);
+		List<String> testi = new ArrayList<>(batch);
+		long[] aggiunti = {0};
+		Runnable flush = () -> {
+			boolean[] r = target.add(persone);
+			for(int k=0; k<r.length; k++)
+				if(r[k]) aggiunti[0]++;
+				else if(lsnr!=null) lsnr.accept(righe.get(k), testi.get(k));
+			persone.clear();
+			righe.clear();
+			testi.clear();
+		};
+		parse(in, lsnr, (i, riga, first, last, ssn, year) -> {
+			persone.add(new Person(first, last, ssn, year));
+			righe.add(i);
+			testi.add(riga);
+			if(persone.size()==batch) flush.run();
+			return true;
+		});
+		if(!persone.isEmpty()) flush.run();
+		return aggiunti[0];
+	}
+
+	private long parse(Reader in, BiConsumer<Integer,String> lsnr, Row target) throws IOException, VaccineException {
+		try(BufferedReader br = new BufferedReader(in, 1<<16)) {
+			List<String> parti = buffer();
+			String riga = br.readLine();
+			if(riga==null)
+				throw new VaccineException("Missing header");
+			if(!riga.isEmpty() && riga.charAt(0)=='\uFEFF')
+				riga=riga.substring(1);
+
+			int[] col = split(riga, parti) ? columns(parti) : null;
+			if(col==null) {
+				if(lsnr!=null) lsnr.accept(1, riga);
+				throw new VaccineException("Wrong header: " + riga);
+			}
+			int campi=parti.size();
+
+			int i=1;
+			long aggiunti=0;
+			while((riga=br.readLine())!=null)
+			{
+				i++;
+				if(!split(riga, parti) || parti.size()!=campi) {
+					if(lsnr!=null) lsnr.accept(i, riga);
+					continue;
+				}
+				String ssn=parti.get(col[SSN]);
+				int anno=parseYear(parti.get(col[YEAR]));
+				if(ssn.isEmpty() || anno<0 ||
+				   !target.add(i, riga, parti.get(col[FIRST]), parti.get(col[LAST]), ssn, anno)) {
+					if(lsnr!=null) lsnr.accept(i, riga);
+					continue;
+				}
+				aggiunti++;
+			}
+			return aggiunti;
+		}
+	}
+
+	/**
+	 * Splits a line into its fields, reusing the given list.
+	 *
+	 * @return {@code false} if the line has an unterminated quoted field
+	 */
+	boolean split(String riga, List<String> campi) {
+		campi.clear();
+		int n=riga.length(), i=0;
+		if(riga.indexOf(quote)<0) {
+			// fast path: no quoted fields
+			int s=0;
+			for(; i<n; i++)
+				if(riga.charAt(i)==separator) {
+					campi.add(riga.substring(s, i).trim());
+					s=i+1;
+				}
+			campi.add(riga.substring(s).trim());
+			return true;
+		}
+		StringBuilder sb = new StringBuilder();
+		boolean quoted=false;
+		for(; i<n; i++) {
+			char c=riga.charAt(i);
+			if(quoted) {
+				if(c==quote) {
+					if(i+1<n && riga.charAt(i+1)==quote) { sb.append(c); i++; }
+					else quoted=false;
+				}
+				else sb.append(c);
+			}
+			else if(c==quote) quoted=true;
+			else if(c==separator) { campi.add(sb.toString().trim()); sb.setLength(0); }
+			else sb.append(c);
+		}
+		campi.add(sb.toString().trim());
+		return !quoted;
+	}
+
+	/**
+	 * Maps the header fields to the position of the required columns.
+	 *
+	 * @return positions indexed by {@link #SSN}, {@link #LAST}, {@link #FIRST}
+	 * 			and {@link #YEAR}, or {@code null} if any column is missing
+	 */
+	int[] columns(List<String> header) {
+		int[] pos = new int[COLUMNS.length];
+		for(int c=0; c<COLUMNS.length; c++) {
+			pos[c]=-1;
+			for(int i=0; i<header.size(); i++)
+				if(header.get(i).equalsIgnoreCase(COLUMNS[c])) { pos[c]=i; break; }
+			if(pos[c]<0) return null;
+		}
+		return pos;
+	}
+
+	/**
+	 * Parses a birth year without going through {@link Integer#parseInt},
+	 * so malformed values do not cost an exception.
+	 *
+	 * @return the year or {@code -1} if the field is not a valid year
+	 */
+	static int parseYear(String s) {
+		int n=s.length();
+		if(n==0 || n>4) return -1;
+		int y=0;
+		for(int i=0; i<n; i++) {
+			char c=s.charAt(i);
+			if(c<'0' || c>'9') return -1;
+			y=y*10+(c-'0');
+		}
+		return y;
+	}
+
+	private static List<String> buffer() {
+		return new ArrayList<>(COLUMNS.length);
+	}
+}
@@ -0,0 +1,196 @@
+package it.polito.oop.vaccination;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Two-dose scheduling over several weeks; vaccines with a different
+ * number of doses are not supported.
+ * <p>
+ * Every hub has a capacity ledger over the days of the planning horizon,
+ * initialized with the daily availability of the hub (see
+ * {@link Vaccines#getDailyAvailable}) repeated every week.
+ * Doses are scheduled by day only: the hourly time slots of the hubs
+ * (see {@link Vaccines#getHours}) are not taken into account.
+ * <p>
+ * People are scheduled oldest first: each person gets the earliest first
+ * dose, over all the hubs, for which a second dose in the same hub is
+ * still free between {@code minGap} and {@code maxGap} days later,
+ * and both places are reserved at once; hubs offering the same day
+ * are used in round robin. Ledgers are Fenwick trees, so finding the
+ * next free day and checking the free places in a window are logarithmic in
+ * the number of days. Hubs are kept sorted by their earliest first dose,
+ * which changes only for the hub just used, so scheduling a person is
+ * logarithmic in the number of hubs.
+ * <p>
+ * The scheduler works on a snapshot of hubs, staff and hours taken at
+ * construction; it is independent of the daily allocations made with
+ * {@link Vaccines#allocate}.
+ */
+public class DoseScheduler {
+	private final Vaccines vaccines;
+	private final int days, minGap, maxGap;
+	private final List<String> hubs;
+	private final Fenwick[] free;
+	private int prossimo;	// next hub tried, for round robin
+	// earliest first dose * hubs + hub, for the hubs that can still host both doses
+	private final TreeSet<Long> pronti = new TreeSet<>();
+
+	// per row: hub index + 1 (0 = not scheduled), days of the two doses
+	private int[] hub = new int[0];
+	private int[] first = new int[0], second = new int[0];
+
+	/**
+	 * @param weeks planning horizon in weeks
+	 * @param minGap minimum number of days between the doses
+	 * @param maxGap maximum number of days between the doses
+	 */
+	public DoseScheduler(Vaccines vaccines, int weeks, int minGap, int maxGap) {
+		super();
+		if(weeks<1 || minGap<1 || maxGap<minGap)
+			throw new IllegalArgumentException("Wrong horizon or gaps");
+		this.vaccines = vaccines;
+		this.days = weeks*7;
+		this.minGap = minGap;
+		this.maxGap = maxGap;
+		this.hubs = new ArrayList<>(vaccines.hubs.keySet());
+		Collections.sort(hubs);
+		this.free = new Fenwick[hubs.size()];
+		for(int k=0; k<hubs.size(); k++) {
+			Hub h=vaccines.hubs.get(hubs.get(k));
+			int[] c = new int[days];
+			if(h.isPersonalSet())
+				for(int d=0; d<days; d++)
+					c[d] = d%7<vaccines.hours.size() ? vaccines.hours.get(d%7)*h.estimateHourlyCapacity() : 0;
+			free[k] = new Fenwick(c);
+			update(k);
+		}
+	}
+
+	private void update(int k) {
+		int d=firstPair(free[k]);
+		if(d>=0) pronti.add((long)d*free.length+k);
+	}
+
+	/**
+	 * Schedules all the people not scheduled yet, oldest first.
+	 *
+	 * @return number of people scheduled by this invocation
+	 */
+	public int schedule() {
+		vaccines.materialize();
+		grow();
+		List<Person> todo = new ArrayList<>();
+		for(Person p: vaccines.rows)
+			if(hub[p.row]==0) todo.add(p);
+		todo.sort(Comparator.comparingInt((Person p) -> p.year).thenComparingInt(p -> p.row));
+		int n=0;
+		for(Person p: todo) {
+			if(!schedule(p)) break;	// no capacity left for anybody
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Schedules a single person in the hub with the earliest first dose;
+	 * ties go to the first hub in round robin order.
+	 *
+	 * @return {@code false} if no hub can host both doses
+	 */
+	private boolean schedule(Person p) {
+		if(pronti.isEmpty()) return false;
+		int n=free.length;
+		int d1=(int)(pronti.first()/n);
+		Long c=pronti.ceiling((long)d1*n+prossimo);
+		long key= c!=null && c/n==d1 ? c : pronti.first();
+		int k=(int)(key%n);
+		pronti.remove(key);
+		int d2=free[k].firstPositive(d1+minGap);
+		free[k].add(d1, -1);
+		free[k].add(d2, -1);
+		hub[p.row]=k+1;
+		first[p.row]=d1;
+		second[p.row]=d2;
+		prossimo=(k+1)%n;
+		update(k);
+		return true;
+	}
+
+	/**
+	 * Earliest day with a free place followed by another
+	 * free place within the allowed gap.
+	 */
+	private int firstPair(Fenwick f) {
+		for(int d1=f.firstPositive(0); d1>=0 && d1+minGap<days; d1=f.firstPositive(d1+1)) {
+			int d2=f.firstPositive(d1+minGap);
+			if(d2<0) return -1;	// no later day has places
+			if(d2<=d1+maxGap) return d1;
+		}
+		return -1;
+	}
+
+	private void grow() {
+		int n=vaccines.rows.size();
+		if(hub.length>=n) return;
+		hub=Arrays.copyOf(hub, n);
+		first=Arrays.copyOf(first, n);
+		second=Arrays.copyOf(second, n);
+	}
+
+	private int row(String ssn) {
+		Person p=vaccines.people.get(ssn);
+		return p==null || p.row>=hub.length || hub[p.row]==0 ? -1 : p.row;
+	}
+
+	/**
+	 * @return the hub of the person or {@code null} if not scheduled
+	 */
+	public String getHub(String ssn) {
+		int r=row(ssn);
+		return r<0 ? null : hubs.get(hub[r]-1);
+	}
+
+	/**
+	 * @return day of the first dose (0 = Monday of the first week) or {@code -1}
+	 */
+	public int getFirstDose(String ssn) {
+		int r=row(ssn);
+		return r<0 ? -1 : first[r];
+	}
+
+	/**
+	 * @return day of the second dose or {@code -1}
+	 */
+	public int getSecondDose(String ssn) {
+		int r=row(ssn);
+		return r<0 ? -1 : second[r];
+	}
+
+	/**
+	 * Free places of a hub in the days {@code [from,to)}.
+	 */
+	public int getFree(String hubName, int from, int to) {
+		int k=hubs.indexOf(hubName);
+		return k<0 ? 0 : free[k].sum(from, to);
+	}
+
+	/**
+	 * Free places of a hub for each day of the horizon.
+	 */
+	public int[] getFree(String hubName) {
+		int k=hubs.indexOf(hubName);
+		int[] res = new int[days];
+		if(k>=0)
+			for(int d=0; d<days; d++) res[d]=free[k].get(d);
+		return res;
+	}
+
+	public int getDays() {
+		return days;
+	}
+}
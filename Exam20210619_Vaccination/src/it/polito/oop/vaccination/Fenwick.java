@@ -0,0 +1,72 @@
+package it.polito.oop.vaccination;
+
+/**
+ * Fenwick (binary indexed) tree of non-negative counters,
+ * with prefix sums and search of the first positive counter
+ * in logarithmic time.
+ */
+class Fenwick {
+	private final int[] tree;
+	private final int n;
+	private final int top;	// highest power of 2 not greater than n
+
+	Fenwick(int[] values) {
+		n = values.length;
+		tree = new int[n+1];
+		for(int i=1; i<=n; i++) {
+			tree[i] += values[i-1];
+			int j = i + (i & -i);
+			if(j<=n) tree[j] += tree[i];
+		}
+		top = n==0 ? 0 : Integer.highestOneBit(n);
+	}
+
+	int size() {
+		return n;
+	}
+
+	void add(int i, int delta) {
+		for(i++; i<=n; i+=i & -i)
+			tree[i]+=delta;
+	}
+
+	/**
+	 * Sum of the counters in {@code [0,i)}.
+	 */
+	int prefix(int i) {
+		int s=0;
+		for(i=Math.min(i, n); i>0; i-=i & -i)
+			s+=tree[i];
+		return s;
+	}
+
+	/**
+	 * Sum of the counters in {@code [from,to)}.
+	 */
+	int sum(int from, int to) {
+		return to<=from ? 0 : prefix(to)-prefix(Math.max(from, 0));
+	}
+
+	int get(int i) {
+		return sum(i, i+1);
+	}
+
+	/**
+	 * First index {@code >= from} with a positive counter.
+	 *
+	 * @return the index or {@code -1} if there is none
+	 */
+	int firstPositive(int from) {
+		if(from>=n) return -1;
+		// smallest i such that prefix(i+1) > prefix(from)
+		int target=prefix(Math.max(from, 0)), pos=0;
+		for(int step=top; step>0; step>>=1) {
+			int next=pos+step;
+			if(next<=n && tree[next]<=target) {
+				pos=next;
+				target-=tree[next];
+			}
+		}
+		return pos<n ? pos : -1;
+	}
+}
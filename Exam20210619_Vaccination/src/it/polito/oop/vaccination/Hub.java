@@ -34,6 +34,15 @@ public class Hub {
 	
 	
 	
+	Hub(Hub h) {
+		this(h.name, h.dottori, h.infermieri, h.altro);
+		personalSetted=h.personalSetted;
+		for(int d=0; d<7; d++) {
+			a[d] = h.a[d]==null ? null : Arrays.copyOf(h.a[d], h.n[d]);
+			n[d] = h.n[d];
+		}
+	}
+	
 	public Hub(String name, int dottori, int infermieri, int altro) {
 		super();
 		this.name = name;
@@ -69,10 +78,45 @@ public class Hub {
 	
 	
 
-	Map<Integer, ArrayList<String>> a = new HashMap<>();
-	public void ad(int d, ArrayList<String> l){
-		if(a.containsKey(d)) l.stream().forEach(s->a.get(d).add(s));	
-		else a.put(d,l);	
-	}	
+	// row ids (see Vaccines.rows) of the people allocated on each day
+	int[][] a = new int[7][];
+	int[] n = new int[7];
+	public void ad(int d, int row){
+		if(a[d]==null) a[d]=new int[64];
+		else if(n[d]==a[d].length) a[d]=Arrays.copyOf(a[d], Math.max(64, n[d]*2));
+		a[d][n[d]++]=row;
+	}
+	
+	public boolean isAllocated() {
+		for(int k: n)
+			if(k>0) return true;
+		return false;
+	}
+	
+	public void clear() {
+		// new buffers so that views already returned stay unchanged
+		a = new int[7][];
+		n = new int[7];
+	}
+	
+	/**
+	 * Read-only view of the SSNs allocated on a day,
+	 * later allocations or a {@link #clear()} do not affect it.
+	 */
+	List<String> allocated(int d, List<Person> rows) {
+		int[] ids=a[d];
+		int size=n[d];
+		return new AbstractList<String>() {
+			@Override
+			public String get(int i) {
+				if(i<0 || i>=size) throw new IndexOutOfBoundsException("Index: "+i+", Size: "+size);
+				return rows.get(ids[i]).ssn;
+			}
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,206 @@
+package it.polito.oop.vaccination;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * People of a CSV file kept as raw bytes plus an index of their SSNs,
+ * see {@link Vaccines#loadPeopleLazy(java.nio.file.Path, CsvFormat)}.
+ * <p>
+ * Only the line offsets, the SSN positions and the birth years are
+ * extracted while indexing; the other fields are decoded on request.
+ * Lines containing the quote character are not indexed but handed to
+ * the given {@link CsvFormat.Target}, they are expected to be rare.
+ */
+class LazyPeople {
+	private final byte[] data;
+	private final CsvFormat format;
+	private final int campi;
+	private final int[] col;
+
+	private int size;
+	private int[] starts;	// line start offsets
+	private int[] ssnOff;	// SSN start offsets
+	private byte[] ssnLen;
+	private short[] years;
+	private int[] table;	// open addressing, entry is index+1
+	private int mask;
+
+	/**
+	 * Indexes the content of a CSV file.
+	 *
+	 * @param lsnr listener for malformed or duplicate lines, may be {@code null}
+	 * @param existing people already known, checked for duplicates,
+	 *        {@code eager} must add to this same map
+	 * @param eager receiver of the lines that cannot be indexed
+	 */
+	LazyPeople(byte[] data, CsvFormat format, BiConsumer<Integer,String> lsnr,
+			Map<String, ?> existing, CsvFormat.Target eager) throws VaccineException {
+		this.data = data;
+		this.format = format;
+		int n=data.length, p=0;
+		if(n>=3 && (data[0]&0xFF)==0xEF && (data[1]&0xFF)==0xBB && (data[2]&0xFF)==0xBF)
+			p=3;
+
+		int righe=0;
+		for(int i=p; i<n; i++)
+			if(data[i]=='\n') righe++;
+		starts = new int[righe+1];
+		ssnOff = new int[righe+1];
+		ssnLen = new byte[righe+1];
+		years = new short[righe+1];
+		int cap = Integer.highestOneBit(Math.max(righe, 1)*2-1)<<1;
+		table = new int[cap];
+		mask = cap-1;
+
+		List<String> parti = new ArrayList<>();
+		int e=end(p);
+		String header=string(p, e);
+		int[] c = format.split(header, parti) ? format.columns(parti) : null;
+		if(c==null) {
+			if(lsnr!=null) lsnr.accept(1, header);
+			throw new VaccineException("Wrong header: " + header);
+		}
+		col=c;
+		campi=parti.size();
+
+		int riga=1;
+		for(p=next(e); p<n; p=next(e)) {
+			riga++;
+			e=end(p);
+			if(!index(p, e, existing, eager, parti) && lsnr!=null)
+				lsnr.accept(riga, string(p, e));
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean contains(String ssn) {
+		return find(ssn)>=0;
+	}
+
+	int getYear(String ssn) {
+		int i=find(ssn);
+		return i<0 ? -1 : years[i];
+	}
+
+	Person get(String ssn) {
+		int i=find(ssn);
+		return i<0 ? null : decode(i);
+	}
+
+	/**
+	 * Adds the SSNs of the people whose age in {@code currentYear} is in the interval.
+	 */
+	void inInterval(Interval in, int currentYear, Collection<String> into) {
+		for(int i=0; i<size; i++)
+			if(in.contains(currentYear-years[i]))
+				into.add(new String(data, ssnOff[i], ssnLen[i], StandardCharsets.UTF_8));
+	}
+
+	Person decode(int i) {
+		List<String> parti = new ArrayList<>(campi);
+		format.split(string(starts[i], end(starts[i])), parti);
+		return new Person(parti.get(col[CsvFormat.FIRST]), parti.get(col[CsvFormat.LAST]),
+				parti.get(col[CsvFormat.SSN]), years[i]);
+	}
+
+	/**
+	 * Indexes the line in {@code [s,e)}.
+	 *
+	 * @return {@code false} if the line is malformed or a duplicate
+	 */
+	private boolean index(int s, int e, Map<String, ?> existing,
+			CsvFormat.Target eager, List<String> parti) {
+		int campo=0, fs=s, ss=-1, se=-1, ys=-1, ye=-1;
+		for(int i=s; i<=e; i++) {
+			if(i<e && data[i]==format.quote) {
+				// quoted fields: decode now
+				if(!format.split(string(s, e), parti) || parti.size()!=campi) return false;
+				int anno=CsvFormat.parseYear(parti.get(col[CsvFormat.YEAR]));
+				String ssn=parti.get(col[CsvFormat.SSN]);
+				return !ssn.isEmpty() && anno>=0 && !contains(ssn) &&
+						eager.add(parti.get(col[CsvFormat.FIRST]), parti.get(col[CsvFormat.LAST]), ssn, anno);
+			}
+			if(i==e || data[i]==format.separator) {
+				if(campo==col[CsvFormat.SSN]) { ss=fs; se=i; }
+				else if(campo==col[CsvFormat.YEAR]) { ys=fs; ye=i; }
+				campo++;
+				fs=i+1;
+			}
+		}
+		if(campo!=campi) return false;
+		while(ss<se && data[ss]==' ') ss++;
+		while(se>ss && data[se-1]==' ') se--;
+		while(ys<ye && data[ys]==' ') ys++;
+		while(ye>ys && data[ye-1]==' ') ye--;
+		if(se==ss || se-ss>127 || ye==ys || ye-ys>4) return false;
+		int anno=0;
+		for(int i=ys; i<ye; i++) {
+			if(data[i]<'0' || data[i]>'9') return false;
+			anno=anno*10+(data[i]-'0');
+		}
+
+		int h=hash(data, ss, se-ss) & mask;
+		for(int k=table[h]; k!=0; k=table[h]) {
+			if(equals(k-1, data, ss, se-ss)) return false;
+			h=(h+1) & mask;
+		}
+		if(!existing.isEmpty() && existing.containsKey(string(ss, se))) return false;
+		starts[size]=s;
+		ssnOff[size]=ss;
+		ssnLen[size]=(byte)(se-ss);
+		years[size]=(short)anno;
+		table[h]=++size;
+		return true;
+	}
+
+	private int find(String ssn) {
+		if(ssn==null) return -1;
+		byte[] k = ssn.getBytes(StandardCharsets.UTF_8);
+		int h=hash(k, 0, k.length) & mask;
+		for(int i=table[h]; i!=0; i=table[h]) {
+			if(equals(i-1, k, 0, k.length)) return i-1;
+			h=(h+1) & mask;
+		}
+		return -1;
+	}
+
+	private boolean equals(int i, byte[] b, int s, int n) {
+		if(ssnLen[i]!=n) return false;
+		for(int j=0, o=ssnOff[i]; j<n; j++)
+			if(data[o+j]!=b[s+j]) return false;
+		return true;
+	}
+
+	private static int hash(byte[] b, int s, int n) {
+		int h=0x811C9DC5;
+		for(int i=s; i<s+n; i++)
+			h=(h^b[i])*0x01000193;
+		return h ^ (h>>>16);
+	}
+
+	/**
+	 * End of the line starting at {@code p}, excluding {@code "\r\n"} or {@code "\n"}.
+	 */
+	private int end(int p) {
+		int i=p;
+		while(i<data.length && data[i]!='\n') i++;
+		return i>p && data[i-1]=='\r' ? i-1 : i;
+	}
+
+	private int next(int e) {
+		if(e<data.length && data[e]=='\r') e++;
+		return e+1;
+	}
+
+	private String string(int s, int e) {
+		return new String(data, s, e-s, StandardCharsets.UTF_8);
+	}
+}
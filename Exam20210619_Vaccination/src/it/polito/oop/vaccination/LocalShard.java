@@ -0,0 +1,115 @@
+package it.polito.oop.vaccination;
+
+import java.time.Clock;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shard held in the same process.
+ */
+class LocalShard implements Shard {
+	final Vaccines vaccines;
+
+	LocalShard(Vaccines vaccines) {
+		this.vaccines = vaccines;
+	}
+
+	@Override
+	public boolean addPerson(String first, String last, String ssn, int year) {
+		return vaccines.addPerson(first, last, ssn, year);
+	}
+	@Override
+	public boolean[] addPeople(List<Person> people) {
+		boolean[] r = new boolean[people.size()];
+		for(int i=0; i<r.length; i++) {
+			Person p=people.get(i);
+			r[i]=vaccines.addPerson(p.firstName, p.lastName, p.ssn, p.year);
+		}
+		return r;
+	}
+	@Override
+	public int countPeople() {
+		return vaccines.countPeople();
+	}
+	@Override
+	public String getPerson(String ssn) {
+		return vaccines.getPerson(ssn);
+	}
+	@Override
+	public int getAge(String ssn) {
+		return vaccines.getAge(ssn);
+	}
+	@Override
+	public void setClock(Clock clock) {
+		vaccines.setClock(clock);
+	}
+	@Override
+	public void setAgeIntervals(int... breaks) {
+		vaccines.setAgeIntervals(breaks);
+	}
+	@Override
+	public Collection<String> getAgeIntervals() {
+		return vaccines.getAgeIntervals();
+	}
+	@Override
+	public Collection<String> getInInterval(String label) {
+		return vaccines.getInInterval(label);
+	}
+	@Override
+	public void defineHub(String name) throws VaccineException {
+		vaccines.defineHub(name);
+	}
+	@Override
+	public Collection<String> getHubs() {
+		return vaccines.getHubs();
+	}
+	@Override
+	public void setStaff(String name, int doctors, int nurses, int other) throws VaccineException {
+		vaccines.setStaff(name, doctors, nurses, other);
+	}
+	@Override
+	public int estimateHourlyCapacity(String hub) throws VaccineException {
+		return vaccines.estimateHourlyCapacity(hub);
+	}
+	@Override
+	public void setHours(int... hours) throws VaccineException {
+		vaccines.setHours(hours);
+	}
+	@Override
+	public int getDailyAvailable(String hub, int d) {
+		return vaccines.getDailyAvailable(hub, d);
+	}
+	@Override
+	public Map<String, List<Integer>> getAvailable() {
+		return vaccines.getAvailable();
+	}
+	@Override
+	public List<String> allocate(String hub, int d, int t) {
+		return vaccines.allocate(hub, d, t);
+	}
+	@Override
+	public List<Map<String, List<String>>> weekAllocate(int[] quote) {
+		return vaccines.weekAllocate(false, quote);
+	}
+	@Override
+	public int[][] getPlaces() {
+		return vaccines.places();
+	}
+	@Override
+	public void clearAllocation() {
+		vaccines.clearAllocation();
+	}
+	@Override
+	public long getAllocated() {
+		vaccines.materialize();
+		return vaccines.allocated.cardinality();
+	}
+	@Override
+	public Map<String, long[]> getIntervalHistogram() {
+		return vaccines.getIntervalHistogram();
+	}
+	@Override
+	public void close() {
+	}
+}
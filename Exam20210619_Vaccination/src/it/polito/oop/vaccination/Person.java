@@ -38,5 +38,5 @@ public class Person {
 	
 	
 
-	boolean allocated;
+	int row; // position in Vaccines.rows
 }
@@ -0,0 +1,288 @@
+package it.polito.oop.vaccination;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the current allocation plan and the hub availability
+ * to a channel, reading them directly from the hubs without building
+ * the nested collections returned by {@link Vaccines#weekAllocate()}.
+ * <p>
+ * CSV output has the header {@code DAY,HUB,SSN,INTERVAL} for the plan and
+ * {@code HUB,DAY,AVAILABLE,FREE} for the availability; fields containing
+ * commas, quotes or line breaks (e.g. interval labels) are enclosed in
+ * double quotes, doubling the quotes they contain.
+ * <p>
+ * The binary plan format (big endian) is:
+ * <pre>
+ * "VPLN" version:int
+ * hubs:int     { name:str }
+ * intervals:int { label:str }
+ * blocks:int   { day:byte hub:int n:int { ssn:str }*n { interval:short }*n }
+ * </pre>
+ * where {@code str} is an unsigned short length followed by UTF-8 bytes and
+ * the interval index is {@code -1} when the person has no interval.
+ * Every block holds the allocations of a hub on a day, with SSNs and
+ * intervals stored as separate columns.
+ * <p>
+ * Each method copies the allocations holding the {@code Vaccines} monitor
+ * and writes them after releasing it, so that the output is consistent with
+ * concurrent registrations and allocations made by threads following the same
+ * convention (see {@link RegistrationPipeline}) and a slow channel does not
+ * block them. Only the row ids are copied: rows are only appended to.
+ * Writes of the same exporter are serialized.
+ */
+public class PlanExporter {
+	static final int MAGIC = 0x56504C4E; // "VPLN"
+	static final int VERSION = 2;	// 1 had byte interval indexes
+
+	private final Vaccines vaccines;
+	private final ByteBuffer buf;
+	private WritableByteChannel ch;
+
+	/**
+	 * Plan and capacities as they were under the monitor.
+	 */
+	private static final class Plan {
+		final List<String> hubs = new ArrayList<>();
+		final List<int[][]> ids = new ArrayList<>();	// by hub, day
+		List<Person> rows;
+		List<Interval> intervals;
+		int year;
+		int[] total, free;	// by hub*7+day
+	}
+
+	public PlanExporter(Vaccines vaccines) {
+		this(vaccines, 1<<16);
+	}
+
+	/**
+	 * @param bufferSize size of the write buffer, at least 256 bytes
+	 */
+	public PlanExporter(Vaccines vaccines, int bufferSize) {
+		super();
+		this.vaccines = vaccines;
+		this.buf = ByteBuffer.allocateDirect(Math.max(bufferSize, 256));
+	}
+
+	/**
+	 * Writes the allocation plan in CSV format.
+	 */
+	public synchronized void writePlanCsv(WritableByteChannel out) throws IOException {
+		planCsv(out, plan());
+	}
+
+	private void planCsv(WritableByteChannel out, Plan p) throws IOException {
+		begin(out);
+		ascii("DAY,HUB,SSN,INTERVAL\n");
+		for(int d=0; d<7; d++)
+			for(int k=0; k<p.hubs.size(); k++)
+				for(int row: p.ids.get(k)[d]) {
+					Person x=p.rows.get(row);
+					ascii(Integer.toString(d));
+					put((byte)',');
+					field(p.hubs.get(k));
+					put((byte)',');
+					field(x.ssn);
+					put((byte)',');
+					int i=interval(p, x);
+					if(i>=0) field(p.intervals.get(i).toString());
+					put((byte)'\n');
+				}
+		end();
+	}
+
+	/**
+	 * Writes the allocation plan in the binary columnar format.
+	 */
+	public synchronized void writePlanBinary(WritableByteChannel out) throws IOException {
+		planBinary(out, plan());
+	}
+
+	private void planBinary(WritableByteChannel out, Plan p) throws IOException {
+		List<Interval> intervals = p.intervals;
+		if(intervals.size()>Short.MAX_VALUE)
+			throw new IOException("Too many intervals: " + intervals.size());
+		begin(out);
+		room(8);
+		buf.putInt(MAGIC).putInt(VERSION);
+		room(4);
+		buf.putInt(p.hubs.size());
+		for(String h: p.hubs)
+			str(h);
+		room(4);
+		buf.putInt(intervals.size());
+		for(Interval i: intervals)
+			str(i.toString());
+
+		int blocks=0;
+		for(int d=0; d<7; d++)
+			for(int[][] ids: p.ids)
+				if(ids[d].length>0) blocks++;
+		room(4);
+		buf.putInt(blocks);
+		for(int d=0; d<7; d++)
+			for(int k=0; k<p.hubs.size(); k++) {
+				int[] ids=p.ids.get(k)[d];
+				int n=ids.length;
+				if(n==0) continue;
+				room(9);
+				buf.put((byte)d).putInt(k).putInt(n);
+				for(int r=0; r<n; r++)
+					str(p.rows.get(ids[r]).ssn);
+				for(int r=0; r<n; r++) {
+					room(2);
+					buf.putShort((short)interval(p, p.rows.get(ids[r])));
+				}
+			}
+		end();
+	}
+
+	/**
+	 * Writes the available places of every hub for the 7 days in CSV format,
+	 * together with the places not allocated yet.
+	 * Hubs without staff, or days without hours, have no places.
+	 */
+	public synchronized void writeAvailableCsv(WritableByteChannel out) throws IOException {
+		availableCsv(out, plan());
+	}
+
+	private void availableCsv(WritableByteChannel out, Plan p) throws IOException {
+		begin(out);
+		ascii("HUB,DAY,AVAILABLE,FREE\n");
+		for(int k=0; k<p.hubs.size(); k++)
+			for(int d=0; d<7; d++) {
+				field(p.hubs.get(k));
+				put((byte)',');
+				ascii(Integer.toString(d));
+				put((byte)',');
+				ascii(Integer.toString(p.total[k*7+d]));
+				put((byte)',');
+				ascii(Integer.toString(p.free[k*7+d]));
+				put((byte)'\n');
+			}
+		end();
+	}
+
+	/**
+	 * Copies the allocated row ids of every hub and the capacities under the monitor.
+	 */
+	private Plan plan() {
+		Plan p = new Plan();
+		synchronized(vaccines) {
+			CapacityLedger l=vaccines.ledger;
+			p.rows=vaccines.rows;
+			p.intervals=new ArrayList<>(vaccines.intervals.values());
+			p.year=vaccines.currentYear();
+			p.total=new int[vaccines.hubs.size()*7];
+			p.free=new int[p.total.length];
+			for(Hub h: vaccines.hubs.values()) {
+				int k=p.hubs.size(), j=l.hub(h.name);
+				int[][] ids = new int[7][];
+				for(int d=0; d<7; d++) {
+					ids[d] = h.a[d]==null ? new int[0] : Arrays.copyOf(h.a[d], h.n[d]);
+					p.total[k*7+d]=l.total(j, d);
+					p.free[k*7+d]=l.free(j, d);
+				}
+				p.hubs.add(h.name);
+				p.ids.add(ids);
+			}
+		}
+		return p;
+	}
+
+	private static int interval(Plan p, Person x) {
+		int age=p.year-x.year;
+		for(int i=0; i<p.intervals.size(); i++)
+			if(p.intervals.get(i).contains(age)) return i;
+		return -1;
+	}
+
+	private void begin(WritableByteChannel out) {
+		ch=out;
+		buf.clear();
+	}
+
+	private void end() throws IOException {
+		flush();
+		ch=null;
+	}
+
+	private void flush() throws IOException {
+		buf.flip();
+		while(buf.hasRemaining())
+			ch.write(buf);
+		buf.clear();
+	}
+
+	private void room(int n) throws IOException {
+		if(buf.remaining()<n) flush();
+	}
+
+	private void put(byte b) throws IOException {
+		if(!buf.hasRemaining()) flush();
+		buf.put(b);
+	}
+
+	private void ascii(String s) throws IOException {
+		for(int i=0; i<s.length(); i++)
+			put((byte)s.charAt(i));
+	}
+
+	private void utf8(String s) throws IOException {
+		if(isAscii(s)) ascii(s);
+		else bytes(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes a CSV field, quoting it if needed.
+	 */
+	private void field(String s) throws IOException {
+		boolean quote=false;
+		for(int i=0; i<s.length() && !quote; i++) {
+			char c=s.charAt(i);
+			quote = c==',' || c=='"' || c=='\n' || c=='\r';
+		}
+		if(!quote) {
+			utf8(s);
+			return;
+		}
+		put((byte)'"');
+		utf8(s.replace("\"", "\"\""));
+		put((byte)'"');
+	}
+
+	private void str(String s) throws IOException {
+		if(isAscii(s) && s.length()<=0xFFFF) {
+			room(2);
+			buf.putShort((short)s.length());
+			ascii(s);
+			return;
+		}
+		byte[] b=s.getBytes(StandardCharsets.UTF_8);
+		if(b.length>0xFFFF) throw new IOException("String too long: " + s.substring(0, 20) + "...");
+		room(2);
+		buf.putShort((short)b.length);
+		bytes(b);
+	}
+
+	private void bytes(byte[] b) throws IOException {
+		for(int i=0; i<b.length; ) {
+			if(!buf.hasRemaining()) flush();
+			int n=Math.min(buf.remaining(), b.length-i);
+			buf.put(b, i, n);
+			i+=n;
+		}
+	}
+
+	private static boolean isAscii(String s) {
+		for(int i=0; i<s.length(); i++)
+			if(s.charAt(i)>=0x80) return false;
+		return true;
+	}
+}
@@ -0,0 +1,192 @@
+package it.polito.oop.vaccination;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic generator of synthetic people and hubs for load tests.
+ * <p>
+ * People are written in the CSV format read by {@link Vaccines#loadPeople},
+ * with SSNs shaped like an italian "codice fiscale" (including the check
+ * character) and birth years following an age pyramid similar to the
+ * italian one. SSNs are unique for up to 26<sup>6</sup> people since the
+ * six leading letters encode a permutation of the person index.
+ * <p>
+ * The same seed always produces the same output.
+ * <pre>
+ * java it.polito.oop.vaccination.PopulationGenerator people.csv 10000000 [seed] [hubs.csv hubs]
+ * </pre>
+ */
+public class PopulationGenerator {
+	static final int CODES = 26*26*26*26*26*26;
+	// odd and not a multiple of 13: i -> i*STEP mod 26^6 is a permutation
+	static final long STEP = 2_654_435_761L % CODES | 1;
+
+	static final String[] FIRSTS = {"Alessandro","Andrea","Anna","Chiara","Davide","Elena","Enrica","Federico",
+			"Francesca","Giorgio","Giulia","Luca","Lucia","Marco","Maria","Mario","Martina","Matteo","Miriam",
+			"Paola","Roberto","Sara","Simone","Valentina"};
+	static final String[] LASTS = {"Bianchi","Bruno","Colombo","Conti","Costa","Draghi","Esposito","Ferrari",
+			"Gallo","Greco","Marino","Mattei","Melone","Neri","Ricci","Romano","Rossi","Russo","Verdi","Villa"};
+	static final char[] MONTHS = "ABCDEHLMPRST".toCharArray();
+	// population share (per mille) of the age bands 0-9, 10-19, ..., 90-99
+	static final int[] AGE_BANDS = {80, 95, 100, 115, 150, 155, 125, 100, 65, 15};
+	// check character values of odd positions, indexed by letter or digit
+	static final int[] ODD = {1, 0, 5, 7, 9, 13, 15, 17, 19, 21, 2, 4, 18, 20, 11, 3, 6, 8, 12, 14, 16, 10, 22, 25, 24, 23};
+
+	private final SplittableRandom rg;
+	private final int currentYear;
+
+	public PopulationGenerator(long seed) {
+		this(seed, Vaccines.CURRENT_YEAR);
+	}
+
+	public PopulationGenerator(long seed, int currentYear) {
+		super();
+		this.rg = new SplittableRandom(seed);
+		this.currentYear = currentYear;
+	}
+
+	/**
+	 * Writes {@code n} people, header included, to the given file.
+	 */
+	public void writePeople(Path file, int n) throws IOException {
+		try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1<<20)) {
+			writePeople(out, n);
+		}
+	}
+
+	/**
+	 * Writes {@code n} people, header included, to the given stream.
+	 */
+	public void writePeople(OutputStream out, int n) throws IOException {
+		if(n>CODES) throw new IllegalArgumentException("At most " + CODES + " people");
+		byte[] riga = new byte[64];
+		ascii(out, "SSN,LAST,FIRST,YEAR\n");
+		for(int i=0; i<n; i++) {
+			int year=birthYear();
+			int k=ssn(riga, i, year);
+			riga[k++]=',';
+			k=put(riga, k, LASTS[rg.nextInt(LASTS.length)]);
+			riga[k++]=',';
+			k=put(riga, k, FIRSTS[rg.nextInt(FIRSTS.length)]);
+			riga[k++]=',';
+			k=put(riga, k, Integer.toString(year));
+			riga[k++]='\n';
+			out.write(riga, 0, k);
+		}
+	}
+
+	/**
+	 * Writes the configuration of {@code n} hubs as {@code NAME,DOCTORS,NURSES,OTHER}.
+	 * The staff is the same defined by {@link #defineHubs(Vaccines, int)}.
+	 */
+	public static void writeHubs(Path file, int n) throws IOException {
+		try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+			ascii(out, "NAME,DOCTORS,NURSES,OTHER\n");
+			for(int i=0; i<n; i++) {
+				int[] s=staff(i);
+				ascii(out, hubName(i) + "," + s[0] + "," + s[1] + "," + s[2] + "\n");
+			}
+		}
+	}
+
+	/**
+	 * Defines {@code n} staffed hubs named {@code "Hub 0001"}, {@code "Hub 0002"}, ...
+	 */
+	public static void defineHubs(Vaccines v, int n) throws VaccineException {
+		for(int i=0; i<n; i++) {
+			int[] s=staff(i);
+			v.defineHub(hubName(i));
+			v.setStaff(hubName(i), s[0], s[1], s[2]);
+		}
+	}
+
+	static String hubName(int i) {
+		return String.format("Hub %04d", i+1);
+	}
+
+	/**
+	 * Staff of a hub, most hubs are small and a few are large.
+	 */
+	static int[] staff(int i) {
+		SplittableRandom r = new SplittableRandom(i*0x9E3779B97F4A7C15L);
+		int size = r.nextInt(100)<80 ? 1+r.nextInt(5) : 5+r.nextInt(20);
+		return new int[] {size+r.nextInt(3), size+r.nextInt(3), size/2+1+r.nextInt(2)};
+	}
+
+	int birthYear() {
+		int x=rg.nextInt(1000), b=0;
+		while(b<AGE_BANDS.length-1 && x>=AGE_BANDS[b])
+			x-=AGE_BANDS[b++];
+		return currentYear - (b*10 + rg.nextInt(10));
+	}
+
+	/**
+	 * Writes the SSN of person {@code i} at the start of {@code b}.
+	 *
+	 * @return the length of the SSN
+	 */
+	int ssn(byte[] b, int i, int year) {
+		long code = i*STEP % CODES;
+		for(int k=5; k>=0; k--) {
+			b[k]=(byte)('A' + code%26);
+			code/=26;
+		}
+		int yy=year%100;
+		b[6]=(byte)('0'+yy/10);
+		b[7]=(byte)('0'+yy%10);
+		b[8]=(byte)MONTHS[rg.nextInt(MONTHS.length)];
+		int day=1+rg.nextInt(28) + (rg.nextBoolean() ? 40 : 0);
+		b[9]=(byte)('0'+day/10);
+		b[10]=(byte)('0'+day%10);
+		b[11]=(byte)('A'+rg.nextInt(26));
+		int place=rg.nextInt(1000);
+		b[12]=(byte)('0'+place/100);
+		b[13]=(byte)('0'+place/10%10);
+		b[14]=(byte)('0'+place%10);
+		b[15]=(byte)check(b);
+		return 16;
+	}
+
+	/**
+	 * Check character of the first 15 characters of a codice fiscale.
+	 */
+	static char check(byte[] b) {
+		int s=0;
+		for(int k=0; k<15; k++) {
+			int c=b[k];
+			int v = c>='A' ? c-'A' : c-'0';
+			s += k%2==0 ? ODD[v] : v;
+		}
+		return (char)('A' + s%26);
+	}
+
+	private static int put(byte[] b, int k, String s) {
+		for(int i=0; i<s.length(); i++)
+			b[k++]=(byte)s.charAt(i);
+		return k;
+	}
+
+	private static void ascii(OutputStream out, String s) throws IOException {
+		for(int i=0; i<s.length(); i++)
+			out.write(s.charAt(i));
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length<2) {
+			System.err.println("Usage: PopulationGenerator <people.csv> <count> [seed] [<hubs.csv> <hubs>]");
+			System.exit(1);
+		}
+		long seed = args.length>2 ? Long.parseLong(args[2]) : 1971;
+		long t=System.nanoTime();
+		new PopulationGenerator(seed).writePeople(Paths.get(args[0]), Integer.parseInt(args[1]));
+		if(args.length>4)
+			writeHubs(Paths.get(args[3]), Integer.parseInt(args[4]));
+		System.out.printf("Generated %s people in %d ms%n", args[1], (System.nanoTime()-t)/1_000_000);
+	}
+}
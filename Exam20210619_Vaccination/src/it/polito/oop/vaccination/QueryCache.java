@@ -0,0 +1,149 @@
+package it.polito.oop.vaccination;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Size-bounded cache of query results, see {@link Vaccines#enableCache(int)}.
+ * <p>
+ * Person information, interval members and statistics are kept in
+ * separate least-recently-used maps so that each kind of change
+ * invalidates only the results it can affect.
+ */
+public class QueryCache {
+	private final Lru<String> persons;
+	private final Lru<String> intervals;
+	private final Lru<String> stats;
+	final int maxEntries;
+	private long hits, misses, invalidations;
+
+	private static class Lru<K> extends LinkedHashMap<K, Object> {
+		private static final long serialVersionUID = 1L;
+		private final int max;
+
+		Lru(int max) {
+			super(16, 0.75f, true);
+			this.max = max;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, Object> eldest) {
+			return size() > max;
+		}
+	}
+
+	/**
+	 * @param maxEntries maximum number of results kept for each kind of query
+	 */
+	public QueryCache(int maxEntries) {
+		super();
+		this.maxEntries = maxEntries;
+		persons = new Lru<>(maxEntries);
+		intervals = new Lru<>(Math.min(maxEntries, 64));
+		stats = new Lru<>(8);
+	}
+
+	String person(String ssn, Supplier<String> f) {
+		return get(persons, ssn, f);
+	}
+
+	<T> T interval(String label, Supplier<T> f) {
+		return get(intervals, label, f);
+	}
+
+	<T> T stat(String name, Supplier<T> f) {
+		return get(stats, name, f);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T get(Lru<String> m, String key, Supplier<T> f) {
+		Object v=m.get(key);
+		if(v!=null) {
+			hits++;
+			return (T)v;
+		}
+		misses++;
+		T r=f.get();
+		if(r!=null) m.put(key, r);
+		return r;
+	}
+
+	/**
+	 * People were added: interval members and statistics change.
+	 */
+	void peopleChanged() {
+		invalidate(intervals);
+		invalidate(stats);
+	}
+
+	/**
+	 * A person of the given age was added: only the members of the
+	 * intervals containing that age and the statistics change.
+	 */
+	void peopleChanged(int age) {
+		int n=intervals.size();
+		intervals.keySet().removeIf(l -> contains(l, age));
+		invalidations+=n-intervals.size();
+		invalidate(stats);
+	}
+
+	/**
+	 * Whether an interval label such as {@code "[60,70)"} or {@code "[60,+)"}
+	 * contains the age; labels that cannot be parsed are assumed to.
+	 */
+	static boolean contains(String label, int age) {
+		int c=label.indexOf(',');
+		if(c<0 || !label.startsWith("[") || !label.endsWith(")")) return true;
+		try {
+			int inizio=Integer.parseInt(label.substring(1, c));
+			String fine=label.substring(c+1, label.length()-1);
+			return age>=inizio && (fine.equals("+") || age<Integer.parseInt(fine));
+		} catch (NumberFormatException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Age intervals were redefined.
+	 */
+	void intervalsChanged() {
+		invalidate(intervals);
+		invalidate(stats);
+	}
+
+	/**
+	 * Allocations were made or cleared: only statistics change.
+	 */
+	void allocationChanged() {
+		invalidate(stats);
+	}
+
+	private void invalidate(Lru<String> m) {
+		if(m.isEmpty()) return;
+		invalidations+=m.size();
+		m.clear();
+	}
+
+	public long getHits() {
+		return hits;
+	}
+	public long getMisses() {
+		return misses;
+	}
+	public long getInvalidations() {
+		return invalidations;
+	}
+	public double getHitRatio() {
+		long n=hits+misses;
+		return n==0 ? 0 : (double)hits/n;
+	}
+	public int size() {
+		return persons.size() + intervals.size() + stats.size();
+	}
+
+	@Override
+	public String toString() {
+		return "hits=" + hits + ", misses=" + misses + ", invalidations=" + invalidations + ", size=" + size();
+	}
+}
@@ -0,0 +1,216 @@
+package it.polito.oop.vaccination;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Ingestion stage in front of {@link Vaccines#addPerson}.
+ * <p>
+ * Any number of feeds may offer registrations concurrently; they are
+ * kept in a bounded queue and added to the system in batches by a single
+ * worker thread that holds the {@code Vaccines} monitor for each batch.
+ * When the queue is full {@link #offer(String, String, String, int)} fails
+ * immediately instead of blocking the producer, so each feed can apply
+ * its own backpressure (retry, slow down, or use the timed variant).
+ * <p>
+ * Failures of {@code addPerson} or of the batch listener do not stop the
+ * worker: they are counted and notified to the error listener, if any.
+ */
+public class RegistrationPipeline implements AutoCloseable {
+	private static final Person STOP = new Person(null, null, null, 0);
+
+	private final Vaccines vaccines;
+	private final BlockingQueue<Person> queue;
+	private final int batchSize;
+	private final Thread worker;
+	private volatile Consumer<List<String>> batchListener;
+	private volatile Consumer<RuntimeException> errorListener;
+	// producers enqueue under the read lock, close() sets closed under the write lock
+	private final ReadWriteLock guard = new ReentrantReadWriteLock();
+	private volatile boolean closed;
+	private volatile boolean running = true;
+
+	private final AtomicLong rejected = new AtomicLong();
+	private long added, duplicates, failures;
+
+	/**
+	 * @param vaccines system receiving the registrations
+	 * @param capacity maximum number of pending registrations
+	 * @param batchSize maximum number of registrations added per batch
+	 */
+	public RegistrationPipeline(Vaccines vaccines, int capacity, int batchSize) {
+		super();
+		this.vaccines = vaccines;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.batchSize = batchSize;
+		this.worker = new Thread(this::run, "registration-pipeline");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Defines a listener notified, from the worker thread and while holding the
+	 * {@code Vaccines} monitor, with the SSNs added by each batch.
+	 * It can be used e.g. to run an incremental {@link Vaccines#allocate}.
+	 */
+	public void setBatchListener(Consumer<List<String>> listener) {
+		batchListener = listener;
+	}
+
+	/**
+	 * Defines a listener notified, from the worker thread, with the exceptions
+	 * thrown while adding a person or by the batch listener.
+	 */
+	public void setErrorListener(Consumer<RuntimeException> listener) {
+		errorListener = listener;
+	}
+
+	/**
+	 * Offers a registration without blocking.
+	 *
+	 * @return {@code false} if the queue is full or the pipeline is closed
+	 */
+	public boolean offer(String first, String last, String ssn, int year) {
+		Person p = new Person(first, last, ssn, year);
+		guard.readLock().lock();
+		try {
+			if(!closed && running && queue.offer(p) && accepted(p))
+				return true;
+		} finally {
+			guard.readLock().unlock();
+		}
+		rejected.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Offers a registration waiting at most the given time for free space.
+	 *
+	 * @return {@code false} if the timeout elapsed or the pipeline is closed
+	 */
+	public boolean offer(String first, String last, String ssn, int year, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		Person p = new Person(first, last, ssn, year);
+		guard.readLock().lock();
+		try {
+			if(!closed && running && queue.offer(p, timeout, unit) && accepted(p))
+				return true;
+		} finally {
+			guard.readLock().unlock();
+		}
+		rejected.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Checks that the worker was still running after the registration was enqueued.
+	 */
+	private boolean accepted(Person p) {
+		return running || !queue.remove(p);
+	}
+
+	public int getPending() {
+		return queue.size();
+	}
+	public long getRejected() {
+		return rejected.get();
+	}
+	public synchronized long getAdded() {
+		return added;
+	}
+	public synchronized long getDuplicates() {
+		return duplicates;
+	}
+	/**
+	 * Number of registrations and batch notifications that failed with an exception.
+	 */
+	public synchronized long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Stops accepting registrations and waits until the pending ones
+	 * have been added.
+	 */
+	@Override
+	public void close() {
+		guard.writeLock().lock();
+		try {
+			if(closed) return;
+			closed=true;	// no offer is in progress, nothing can follow the marker
+		} finally {
+			guard.writeLock().unlock();
+		}
+		try {
+			while(running && !queue.offer(STOP, 100, TimeUnit.MILLISECONDS));
+			worker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		List<Person> batch = new ArrayList<>(batchSize);
+		boolean stop=false;
+		try {
+			while(!stop) {
+				try {
+					batch.add(queue.take());
+				} catch (InterruptedException e) {
+					return;
+				}
+				queue.drainTo(batch, batchSize-1);
+				stop=batch.remove(STOP);
+				add(batch);
+				batch.clear();
+			}
+		} finally {
+			running=false;
+		}
+	}
+
+	private void add(List<Person> batch) {
+		List<String> ssns = new ArrayList<>(batch.size());
+		int falliti=0, errori=0;
+		synchronized(vaccines) {
+			for(Person p: batch)
+				try {
+					if(vaccines.addPerson(p.firstName, p.lastName, p.ssn, p.year))
+						ssns.add(p.ssn);
+				} catch(RuntimeException e) {
+					falliti++;
+					error(e);
+				}
+			Consumer<List<String>> l = batchListener;
+			if(l!=null && !ssns.isEmpty())
+				try {
+					l.accept(ssns);
+				} catch(RuntimeException e) {
+					errori++;
+					error(e);
+				}
+		}
+		synchronized(this) {
+			added+=ssns.size();
+			duplicates+=batch.size()-ssns.size()-falliti;
+			failures+=falliti+errori;
+		}
+	}
+
+	private void error(RuntimeException e) {
+		Consumer<RuntimeException> l = errorListener;
+		if(l==null) return;
+		try {
+			l.accept(e);
+		} catch(RuntimeException ignored) {
+			// the error listener cannot stop the worker either
+		}
+	}
+}
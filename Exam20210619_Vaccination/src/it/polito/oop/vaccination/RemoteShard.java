@@ -0,0 +1,170 @@
+package it.polito.oop.vaccination;
+
+import static it.polito.oop.vaccination.ShardServer.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Clock;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shard hosted by a {@link ShardServer}; calls are serialized on the connection.
+ * <p>
+ * I/O errors are thrown as {@link UncheckedIOException}, errors of the
+ * remote system as {@link IllegalStateException}.
+ */
+class RemoteShard implements Shard {
+	private final Socket socket;
+	private final DataInputStream in;
+	private final DataOutputStream out;
+
+	private interface Args {
+		void write(DataOutputStream out) throws IOException;
+	}
+	private interface Reply<T> {
+		T read(DataInputStream in) throws IOException;
+	}
+
+	RemoteShard(InetSocketAddress address) throws IOException {
+		socket = new Socket(address.getAddress(), address.getPort());
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+	}
+
+	private synchronized <T> T call(byte op, Args a, Reply<T> r) throws VaccineException {
+		try {
+			out.writeByte(op);
+			if(a!=null) a.write(out);
+			out.flush();
+			byte status=in.readByte();
+			if(status==VACCINE_ERROR) throw new VaccineException(in.readUTF());
+			if(status==ERROR) throw new IllegalStateException(in.readUTF());
+			return r==null ? null : r.read(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private <T> T get(byte op, Args a, Reply<T> r) {
+		try {
+			return call(op, a, r);
+		} catch (VaccineException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public boolean addPerson(String first, String last, String ssn, int year) {
+		return get(ADD, o -> { o.writeUTF(first); o.writeUTF(last); o.writeUTF(ssn); o.writeInt(year); },
+				DataInputStream::readBoolean);
+	}
+	@Override
+	public boolean[] addPeople(List<Person> people) {
+		return get(ADD_MANY, o -> {
+			o.writeInt(people.size());
+			for(Person p: people) { o.writeUTF(p.firstName); o.writeUTF(p.lastName); o.writeUTF(p.ssn); o.writeInt(p.year); }
+		}, ShardServer::booleans);
+	}
+	@Override
+	public int countPeople() {
+		return get(COUNT, null, DataInputStream::readInt);
+	}
+	@Override
+	public String getPerson(String ssn) {
+		return get(PERSON, o -> o.writeUTF(ssn), ShardServer::string);
+	}
+	@Override
+	public int getAge(String ssn) {
+		return get(AGE, o -> o.writeUTF(ssn), DataInputStream::readInt);
+	}
+	/**
+	 * The remote clock follows the system clock with the offset
+	 * that the given clock has now.
+	 */
+	@Override
+	public void setClock(Clock clock) {
+		get(CLOCK, o -> { o.writeLong(clock.millis()); o.writeUTF(clock.getZone().getId()); }, null);
+	}
+	@Override
+	public void setAgeIntervals(int... breaks) {
+		get(INTERVALS, o -> ints(o, breaks), null);
+	}
+	@Override
+	public Collection<String> getAgeIntervals() {
+		return get(AGE_INTERVALS, null, ShardServer::strings);
+	}
+	@Override
+	public Collection<String> getInInterval(String label) {
+		return get(IN_INTERVAL, o -> o.writeUTF(label), ShardServer::strings);
+	}
+	@Override
+	public void defineHub(String name) throws VaccineException {
+		call(DEFINE_HUB, o -> o.writeUTF(name), null);
+	}
+	@Override
+	public Collection<String> getHubs() {
+		return get(HUBS, null, ShardServer::strings);
+	}
+	@Override
+	public void setStaff(String name, int doctors, int nurses, int other) throws VaccineException {
+		call(STAFF, o -> { o.writeUTF(name); o.writeInt(doctors); o.writeInt(nurses); o.writeInt(other); }, null);
+	}
+	@Override
+	public int estimateHourlyCapacity(String hub) throws VaccineException {
+		return call(CAPACITY, o -> o.writeUTF(hub), DataInputStream::readInt);
+	}
+	@Override
+	public void setHours(int... hours) throws VaccineException {
+		call(HOURS, o -> ints(o, hours), null);
+	}
+	@Override
+	public int getDailyAvailable(String hub, int d) {
+		return get(DAILY, o -> { o.writeUTF(hub); o.writeInt(d); }, DataInputStream::readInt);
+	}
+	@Override
+	public Map<String, List<Integer>> getAvailable() {
+		return get(AVAILABLE, null, ShardServer::available);
+	}
+	@Override
+	public List<String> allocate(String hub, int d, int t) {
+		return get(ALLOCATE, o -> { o.writeUTF(hub); o.writeInt(d); o.writeInt(t); }, ShardServer::strings);
+	}
+	@Override
+	public List<Map<String, List<String>>> weekAllocate(int[] quote) {
+		return get(WEEK, o -> ints(o, quote), ShardServer::plan);
+	}
+	@Override
+	public int[][] getPlaces() {
+		return get(PLACES, null, in -> new int[][] {ints(in), ints(in)});
+	}
+	@Override
+	public void clearAllocation() {
+		get(CLEAR, null, null);
+	}
+	@Override
+	public long getAllocated() {
+		return get(ALLOCATED, null, DataInputStream::readLong);
+	}
+	@Override
+	public Map<String, long[]> getIntervalHistogram() {
+		return get(HISTOGRAM, null, ShardServer::histogram);
+	}
+
+	@Override
+	public void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// nothing left to release
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package it.polito.oop.vaccination;
+
+import java.time.Clock;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Operations that {@link ShardedVaccines} runs on each shard, either
+ * in the same process ({@link LocalShard}) or in another process
+ * reached over a socket ({@link RemoteShard}).
+ */
+interface Shard extends AutoCloseable {
+	boolean addPerson(String first, String last, String ssn, int year);
+	/**
+	 * Adds several people at once.
+	 *
+	 * @return for each person whether it was added
+	 */
+	boolean[] addPeople(List<Person> people);
+	int countPeople();
+	String getPerson(String ssn);
+	int getAge(String ssn);
+	void setClock(Clock clock);
+
+	void setAgeIntervals(int... breaks);
+	Collection<String> getAgeIntervals();
+	Collection<String> getInInterval(String label);
+
+	void defineHub(String name) throws VaccineException;
+	Collection<String> getHubs();
+	void setStaff(String name, int doctors, int nurses, int other) throws VaccineException;
+	int estimateHourlyCapacity(String hub) throws VaccineException;
+	void setHours(int... hours) throws VaccineException;
+	int getDailyAvailable(String hub, int d);
+	Map<String, List<Integer>> getAvailable();
+
+	/**
+	 * Allocates at most {@code t} places, see {@link Vaccines#allocate(String, int, int)}.
+	 */
+	List<String> allocate(String hub, int d, int t);
+	/**
+	 * Allocates the week with the given places, see {@link Vaccines#weekAllocate(boolean, int[])}.
+	 */
+	List<Map<String, List<String>>> weekAllocate(int[] quote);
+	/**
+	 * Total and used places, see {@link Vaccines#places()}.
+	 */
+	int[][] getPlaces();
+	void clearAllocation();
+	/**
+	 * Number of allocated people.
+	 */
+	long getAllocated();
+	/**
+	 * See {@link Vaccines#getIntervalHistogram()}.
+	 */
+	Map<String, long[]> getIntervalHistogram();
+
+	@Override
+	void close();
+}
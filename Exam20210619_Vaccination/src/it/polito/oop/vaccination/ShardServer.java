@@ -0,0 +1,352 @@
+package it.polito.oop.vaccination;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shard of a {@link ShardedVaccines} hosted by another process
+ * and reached over a loopback socket.
+ * <p>
+ * A shard process is started with
+ * {@code java it.polito.oop.vaccination.ShardServer [port]}; it prints
+ * {@code PORT <n>} on the standard output when ready and exits when
+ * its standard input is closed, e.g. when the process that started it ends.
+ * <p>
+ * Each request is a one byte operation followed by its arguments,
+ * each reply a status byte followed by the result or by the error message;
+ * requests are executed holding the {@code Vaccines} monitor.
+ */
+public class ShardServer implements AutoCloseable {
+	static final byte ADD=1, COUNT=2, PERSON=3, AGE=4, CLOCK=5,
+			INTERVALS=6, AGE_INTERVALS=7, IN_INTERVAL=8,
+			DEFINE_HUB=9, HUBS=10, STAFF=11, CAPACITY=12, HOURS=13, DAILY=14, AVAILABLE=15,
+			ALLOCATE=16, CLEAR=17, ALLOCATED=18, HISTOGRAM=19, ADD_MANY=20,
+			WEEK=21, PLACES=22;
+	static final byte OK=0, VACCINE_ERROR=1, ERROR=2;
+
+	private final Vaccines vaccines;
+	private final ServerSocket socket;
+
+	/**
+	 * Starts serving a shard on the loopback interface.
+	 *
+	 * @param port port number, {@code 0} for any free port
+	 */
+	public ShardServer(Vaccines vaccines, int port) throws IOException {
+		super();
+		this.vaccines = vaccines;
+		this.socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		Thread t = new Thread(this::accept, "shard-server");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	public int getPort() {
+		return socket.getLocalPort();
+	}
+
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length>0 ? Integer.parseInt(args[0]) : 0;
+		try(ShardServer s = new ShardServer(new Vaccines(), port)) {
+			System.out.println("PORT " + s.getPort());
+			System.out.flush();
+			while(System.in.read()>=0);
+		}
+	}
+
+	private void accept() {
+		while(!socket.isClosed()) {
+			try {
+				Socket s=socket.accept();
+				Thread t = new Thread(() -> serve(s), "shard-connection");
+				t.setDaemon(true);
+				t.start();
+			} catch (IOException e) {
+				return;
+			}
+		}
+	}
+
+	private void serve(Socket s) {
+		try(Socket c=s;
+			DataInputStream in = new DataInputStream(new BufferedInputStream(c.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(c.getOutputStream()))) {
+			c.setTcpNoDelay(true);
+			for(int op; (op=in.read())>=0; ) {
+				synchronized(vaccines) {
+					handle((byte)op, in, out);
+				}
+				out.flush();
+			}
+		} catch (IOException e) {
+			// connection closed by the coordinator
+		}
+	}
+
+	private void handle(byte op, DataInputStream in, DataOutputStream out) throws IOException {
+		Vaccines v=vaccines;
+		try {
+			switch(op) {
+			case ADD: {
+				String first=in.readUTF(), last=in.readUTF(), ssn=in.readUTF();
+				int year=in.readInt();
+				boolean r=v.addPerson(first, last, ssn, year);
+				out.writeByte(OK);
+				out.writeBoolean(r);
+				break;
+			}
+			case ADD_MANY: {
+				boolean[] r = new boolean[in.readInt()];
+				for(int i=0; i<r.length; i++) {
+					String first=in.readUTF(), last=in.readUTF(), ssn=in.readUTF();
+					r[i]=v.addPerson(first, last, ssn, in.readInt());
+				}
+				out.writeByte(OK);
+				out.writeInt(r.length);
+				for(boolean b: r) out.writeBoolean(b);
+				break;
+			}
+			case COUNT: {
+				int r=v.countPeople();
+				out.writeByte(OK);
+				out.writeInt(r);
+				break;
+			}
+			case PERSON: {
+				String r=v.getPerson(in.readUTF());
+				out.writeByte(OK);
+				string(out, r);
+				break;
+			}
+			case AGE: {
+				int r=v.getAge(in.readUTF());
+				out.writeByte(OK);
+				out.writeInt(r);
+				break;
+			}
+			case CLOCK: {
+				long millis=in.readLong();
+				ZoneId zone=ZoneId.of(in.readUTF());
+				v.setClock(Clock.offset(Clock.system(zone), Duration.ofMillis(millis-System.currentTimeMillis())));
+				out.writeByte(OK);
+				break;
+			}
+			case INTERVALS: {
+				v.setAgeIntervals(ints(in));
+				out.writeByte(OK);
+				break;
+			}
+			case AGE_INTERVALS: {
+				Collection<String> r=v.getAgeIntervals();
+				out.writeByte(OK);
+				strings(out, r);
+				break;
+			}
+			case IN_INTERVAL: {
+				Collection<String> r=v.getInInterval(in.readUTF());
+				out.writeByte(OK);
+				strings(out, r);
+				break;
+			}
+			case DEFINE_HUB: {
+				v.defineHub(in.readUTF());
+				out.writeByte(OK);
+				break;
+			}
+			case HUBS: {
+				Collection<String> r=v.getHubs();
+				out.writeByte(OK);
+				strings(out, r);
+				break;
+			}
+			case STAFF: {
+				String hub=in.readUTF();
+				int d=in.readInt(), n=in.readInt(), o=in.readInt();
+				v.setStaff(hub, d, n, o);
+				out.writeByte(OK);
+				break;
+			}
+			case CAPACITY: {
+				int r=v.estimateHourlyCapacity(in.readUTF());
+				out.writeByte(OK);
+				out.writeInt(r);
+				break;
+			}
+			case HOURS: {
+				v.setHours(ints(in));
+				out.writeByte(OK);
+				break;
+			}
+			case DAILY: {
+				String hub=in.readUTF();
+				int r=v.getDailyAvailable(hub, in.readInt());
+				out.writeByte(OK);
+				out.writeInt(r);
+				break;
+			}
+			case AVAILABLE: {
+				Map<String, List<Integer>> r=v.getAvailable();
+				out.writeByte(OK);
+				out.writeInt(r.size());
+				for(Map.Entry<String, List<Integer>> e: r.entrySet()) {
+					out.writeUTF(e.getKey());
+					out.writeInt(e.getValue().size());
+					for(int x: e.getValue()) out.writeInt(x);
+				}
+				break;
+			}
+			case ALLOCATE: {
+				String hub=in.readUTF();
+				int d=in.readInt(), t=in.readInt();
+				List<String> r=v.allocate(hub, d, t);
+				out.writeByte(OK);
+				strings(out, r);
+				break;
+			}
+			case WEEK: {
+				List<Map<String, List<String>>> r=v.weekAllocate(false, ints(in));
+				out.writeByte(OK);
+				out.writeInt(r.size());
+				for(Map<String, List<String>> m: r) {
+					out.writeInt(m.size());
+					for(Map.Entry<String, List<String>> e: m.entrySet()) {
+						out.writeUTF(e.getKey());
+						strings(out, e.getValue());
+					}
+				}
+				break;
+			}
+			case PLACES: {
+				int[][] r=v.places();
+				out.writeByte(OK);
+				ints(out, r[0]);
+				ints(out, r[1]);
+				break;
+			}
+			case CLEAR: {
+				v.clearAllocation();
+				out.writeByte(OK);
+				break;
+			}
+			case ALLOCATED: {
+				v.materialize();
+				long r=v.allocated.cardinality();
+				out.writeByte(OK);
+				out.writeLong(r);
+				break;
+			}
+			case HISTOGRAM: {
+				Map<String, long[]> r=v.getIntervalHistogram();
+				out.writeByte(OK);
+				out.writeInt(r.size());
+				for(Map.Entry<String, long[]> e: r.entrySet()) {
+					out.writeUTF(e.getKey());
+					out.writeLong(e.getValue()[0]);
+					out.writeLong(e.getValue()[1]);
+				}
+				break;
+			}
+			default:
+				throw new IOException("Unknown operation " + op);
+			}
+		} catch (VaccineException e) {
+			out.writeByte(VACCINE_ERROR);
+			out.writeUTF(String.valueOf(e.getMessage()));
+		} catch (RuntimeException e) {
+			out.writeByte(ERROR);
+			out.writeUTF(e.toString());
+		}
+	}
+
+	static void string(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s!=null);
+		if(s!=null) out.writeUTF(s);
+	}
+
+	static String string(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	static void strings(DataOutputStream out, Collection<String> l) throws IOException {
+		out.writeInt(l.size());
+		for(String s: l) out.writeUTF(s);
+	}
+
+	static List<String> strings(DataInputStream in) throws IOException {
+		int n=in.readInt();
+		List<String> l = new ArrayList<>(n);
+		for(int i=0; i<n; i++) l.add(in.readUTF());
+		return l;
+	}
+
+	static boolean[] booleans(DataInputStream in) throws IOException {
+		boolean[] a = new boolean[in.readInt()];
+		for(int i=0; i<a.length; i++) a[i]=in.readBoolean();
+		return a;
+	}
+
+	static void ints(DataOutputStream out, int[] a) throws IOException {
+		out.writeInt(a.length);
+		for(int x: a) out.writeInt(x);
+	}
+
+	static int[] ints(DataInputStream in) throws IOException {
+		int[] a = new int[in.readInt()];
+		for(int i=0; i<a.length; i++) a[i]=in.readInt();
+		return a;
+	}
+
+	static Map<String, List<Integer>> available(DataInputStream in) throws IOException {
+		int n=in.readInt();
+		Map<String, List<Integer>> m = new LinkedHashMap<>();
+		for(int i=0; i<n; i++) {
+			String k=in.readUTF();
+			List<Integer> l = new ArrayList<>();
+			for(int j=in.readInt(); j>0; j--) l.add(in.readInt());
+			m.put(k, l);
+		}
+		return m;
+	}
+
+	static List<Map<String, List<String>>> plan(DataInputStream in) throws IOException {
+		List<Map<String, List<String>>> l = new ArrayList<>();
+		for(int d=in.readInt(); d>0; d--) {
+			Map<String, List<String>> m = new LinkedHashMap<>();
+			for(int i=in.readInt(); i>0; i--) {
+				String k=in.readUTF();
+				m.put(k, strings(in));
+			}
+			l.add(m);
+		}
+		return l;
+	}
+
+	static Map<String, long[]> histogram(DataInputStream in) throws IOException {
+		int n=in.readInt();
+		Map<String, long[]> m = new LinkedHashMap<>();
+		for(int i=0; i<n; i++) {
+			String k=in.readUTF();
+			m.put(k, new long[] {in.readLong(), in.readLong()});
+		}
+		return m;
+	}
+}
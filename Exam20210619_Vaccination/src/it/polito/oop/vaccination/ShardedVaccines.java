@@ -0,0 +1,373 @@
+package it.polito.oop.vaccination;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Vaccination system partitioned by SSN hash across several
+ * {@link Vaccines} shards.
+ * <p>
+ * Hubs, staff, hours and age intervals are replicated to every shard,
+ * people are stored only in the shard selected by their SSN.
+ * Queries spanning the whole population are run on all shards in parallel
+ * and their results merged; allocation is coordinated by splitting
+ * the daily capacity of each hub among the shards in proportion
+ * to the people they still have to allocate.
+ * <p>
+ * Shards are either held in this process or hosted by other processes,
+ * possibly on other machines, each running a {@link ShardServer}.
+ * Errors of remote shards are thrown as unchecked exceptions.
+ */
+public class ShardedVaccines implements AutoCloseable {
+	private static final int BATCH=4096;	// people sent to the shards at once while loading
+
+	private final Shard[] shards;
+	private final ExecutorService executor;
+	private BiConsumer<Integer,String> l;
+
+	/**
+	 * Creates a system with {@code n} shards in this process.
+	 */
+	public ShardedVaccines(int n) {
+		this(local(n));
+	}
+
+	/**
+	 * Creates a system whose shards are hosted by the given
+	 * {@link ShardServer}s, that must be empty.
+	 *
+	 * @param nodes addresses of the shard servers
+	 * @throws IOException if a shard server cannot be reached
+	 */
+	public ShardedVaccines(List<InetSocketAddress> nodes) throws IOException {
+		this(remote(nodes));
+	}
+
+	private ShardedVaccines(Shard[] shards) {
+		super();
+		this.shards = shards;
+		executor = Executors.newFixedThreadPool(shards.length, r -> {
+			Thread t = new Thread(r, "vaccines-shard");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	private static Shard[] local(int n) {
+		if(n<1) throw new IllegalArgumentException("At least one shard required");
+		Shard[] s = new Shard[n];
+		for(int i=0; i<n; i++)
+			s[i] = new LocalShard(new Vaccines());
+		return s;
+	}
+
+	private static Shard[] remote(List<InetSocketAddress> nodes) throws IOException {
+		if(nodes.isEmpty()) throw new IllegalArgumentException("At least one shard required");
+		Shard[] s = new Shard[nodes.size()];
+		try {
+			for(int i=0; i<s.length; i++)
+				s[i] = new RemoteShard(nodes.get(i));
+		} catch (IOException e) {
+			for(Shard x: s) if(x!=null) x.close();
+			throw e;
+		}
+		return s;
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	Shard shard(String ssn) {
+		return shards[index(ssn)];
+	}
+
+	private int index(String ssn) {
+		int h=ssn.hashCode()*0x9E3779B9;
+		return Math.floorMod(h ^ (h>>>16), shards.length);
+	}
+
+	// R1
+	public boolean addPerson(String firstName, String last, String ssn, int y) {
+		return shard(ssn).addPerson(firstName, last, ssn, y);
+	}
+
+	public int countPeople() {
+		int n=0;
+		for(int c: scatter(Shard::countPeople)) n+=c;
+		return n;
+	}
+
+	public String getPerson(String ssn) {
+		return shard(ssn).getPerson(ssn);
+	}
+
+	public int getAge(String ssn) {
+		return shard(ssn).getAge(ssn);
+	}
+
+	public void setClock(Clock clock) {
+		for(Shard v: shards) v.setClock(clock);
+	}
+
+	public void setAgeIntervals(int... breaks) {
+		for(Shard v: shards) v.setAgeIntervals(breaks);
+	}
+
+	public Collection<String> getAgeIntervals() {
+		return shards[0].getAgeIntervals();
+	}
+
+	public Collection<String> getInInterval(String intv) {
+		List<String> lista = new ArrayList<>();
+		for(Collection<String> c: scatter(v -> v.getInInterval(intv)))
+			lista.addAll(c);
+		return lista;
+	}
+
+	// R2
+	public void defineHub(String name) throws VaccineException {
+		if(shards[0].getHubs().contains(name))
+			throw new VaccineException("Duplicate hub " + name);
+		for(Shard v: shards) v.defineHub(name);
+	}
+
+	public Collection<String> getHubs() {
+		return shards[0].getHubs();
+	}
+
+	public void setStaff(String name, int doctors, int nNurses, int o) throws VaccineException {
+		for(Shard v: shards) v.setStaff(name, doctors, nNurses, o);
+	}
+
+	public int estimateHourlyCapacity(String hub) throws VaccineException {
+		return shards[0].estimateHourlyCapacity(hub);
+	}
+
+	// R3
+	public void setLoadListener(BiConsumer<Integer, String> lsnr) {
+		l=lsnr;
+	}
+
+	/**
+	 * Load people information stored in CSV format,
+	 * see {@link Vaccines#loadPeople(Reader)}.
+	 */
+	public long loadPeople(Reader people) throws IOException, VaccineException {
+		return loadPeople(people, CsvFormat.DEFAULT);
+	}
+
+	/**
+	 * Load people information stored in CSV format,
+	 * see {@link Vaccines#loadPeople(Reader, CsvFormat)}.
+	 * <p>
+	 * People are sent to the shards in batches, so lines of duplicate
+	 * people are notified to the listener some lines later.
+	 */
+	public long loadPeople(Reader people, CsvFormat format) throws IOException, VaccineException {
+		BiConsumer<Integer,String> a=l;
+		l=null;
+		return format.read(people, a, this::addPeople, BATCH);
+	}
+
+	/**
+	 * Adds people sending each shard its part with a single call, in parallel.
+	 */
+	private boolean[] addPeople(List<Person> people) {
+		int n=shards.length;
+		List<List<Person>> parti = new ArrayList<>(n);
+		for(int i=0; i<n; i++) parti.add(new ArrayList<>());
+		int[] dove = new int[people.size()];
+		for(int k=0; k<dove.length; k++) {
+			dove[k]=index(people.get(k).ssn);
+			parti.get(dove[k]).add(people.get(k));
+		}
+		List<boolean[]> r = scatterIndex(i -> parti.get(i).isEmpty() ? new boolean[0] : shards[i].addPeople(parti.get(i)));
+		boolean[] res = new boolean[dove.length];
+		int[] pos = new int[n];
+		for(int k=0; k<dove.length; k++)
+			res[k]=r.get(dove[k])[pos[dove[k]]++];
+		return res;
+	}
+
+	// R4
+	public void setHours(int... hs) throws VaccineException {
+		for(Shard v: shards) v.setHours(hs);
+	}
+
+	public int getDailyAvailable(String hub, int d) {
+		return shards[0].getDailyAvailable(hub, d);
+	}
+
+	public Map<String, List<Integer>> getAvailable() {
+		return shards[0].getAvailable();
+	}
+
+	/**
+	 * Allocates the places of a hub on a given day splitting
+	 * them among the shards, see {@link Vaccines#allocate(String, int)}.
+	 */
+	public List<String> allocate(String hub, int d) {
+		int[] quote = split(getDailyAvailable(hub, d), liberi());
+		List<String> lista = new ArrayList<>();
+		for(List<String> l: scatterIndex(i -> shards[i].allocate(hub, d, quote[i])))
+			lista.addAll(l);
+		return lista;
+	}
+
+	public void clearAllocation() {
+		scatter(v -> { v.clearAllocation(); return null; });
+	}
+
+	/**
+	 * Computes the allocation plan for the week,
+	 * see {@link Vaccines#weekAllocate()}.
+	 * <p>
+	 * The free places of each hub on each day are split among the shards
+	 * as in {@link #allocate(String, int)}, then every shard allocates
+	 * its part of the week at once with the same algorithm as {@link Vaccines}.
+	 * The daily maps list the hubs in name order.
+	 */
+	public List<Map<String, List<String>>> weekAllocate() {
+		List<String> hubs = new ArrayList<>(getHubs());
+		Collections.sort(hubs);
+		List<int[][]> posti = scatter(Shard::getPlaces);
+		long[] liberi = liberi();
+		int[][] quote = new int[shards.length][hubs.size()*7];
+		for(int x=0; x<hubs.size()*7; x++) {
+			int t=posti.get(0)[0][x];
+			for(int[][] p: posti) t-=p[1][x];
+			int[] q=split(t, liberi);
+			for(int i=0; i<shards.length; i++) quote[i][x]=q[i];
+		}
+		List<List<Map<String, List<String>>>> piani = scatterIndex(i -> shards[i].weekAllocate(quote[i]));
+		List<Map<String, List<String>>> piano = new ArrayList<>();
+		for(int d=0; d<7; d++) {
+			Map<String, List<String>> m = new LinkedHashMap<>();
+			for(String h: hubs) {
+				List<String> l = new ArrayList<>();
+				for(List<Map<String, List<String>>> p: piani)
+					l.addAll(p.get(d).getOrDefault(h, Collections.emptyList()));
+				m.put(h, l);
+			}
+			piano.add(m);
+		}
+		return piano;
+	}
+
+	// R5
+	public double propAllocated() {
+		long allocati=0;
+		for(long n: scatter(Shard::getAllocated))
+			allocati+=n;
+		return (double)allocati/countPeople();
+	}
+
+	public Map<String, Double> propAllocatedAge() {
+		Map<String, Double> res = new HashMap<>();
+		int n=countPeople();
+		allocatedByInterval().forEach((k,c) -> res.put(k, (double)c/n));
+		return res;
+	}
+
+	public Map<String, Double> distributionAllocated() {
+		Map<String, Long> c = allocatedByInterval();
+		long tot=c.values().stream().mapToLong(Long::longValue).sum();
+		Map<String, Double> res = new HashMap<>();
+		c.forEach((k,v) -> res.put(k, (double)v/tot));
+		return res;
+	}
+
+	private Map<String, Long> allocatedByInterval() {
+		Map<String, Long> c = new HashMap<>();
+		for(Map<String, long[]> m: scatter(Shard::getIntervalHistogram))
+			m.forEach((k,v) -> c.merge(k, v[0], Long::sum));
+		return c;
+	}
+
+	/**
+	 * Unallocated people of each shard.
+	 */
+	private long[] liberi() {
+		List<long[]> conti = scatter(v -> new long[] {v.countPeople(), v.getAllocated()});
+		long[] liberi = new long[shards.length];
+		for(int i=0; i<liberi.length; i++)
+			liberi[i]=conti.get(i)[0]-conti.get(i)[1];
+		return liberi;
+	}
+
+	/**
+	 * Splits the capacity of a hub among the shards in proportion to their
+	 * unallocated people; the remainder goes to the shards with the most people.
+	 */
+	private static int[] split(int t, long[] liberi) {
+		int n=liberi.length;
+		long tot=0;
+		for(long x: liberi) tot+=x;
+		int[] quote = new int[n];
+		if(tot==0 || t<=0) return quote;
+		int assegnati=0;
+		for(int i=0; i<n; i++) {
+			quote[i]=(int)(t*liberi[i]/tot);
+			assegnati+=quote[i];
+		}
+		Integer[] ordine = new Integer[n];
+		for(int i=0; i<n; i++) ordine[i]=i;
+		Arrays.sort(ordine, (a,b) -> Long.compare(liberi[b], liberi[a]));
+		for(int k=0; assegnati<t && k<n; k++, assegnati++)
+			quote[ordine[k]]++;
+		return quote;
+	}
+
+	private <T> List<T> scatter(Function<Shard, T> f) {
+		return scatterIndex(i -> f.apply(shards[i]));
+	}
+
+	private interface IntTask<T> {
+		T apply(int shard);
+	}
+
+	private <T> List<T> scatterIndex(IntTask<T> f) {
+		List<Future<T>> futures = new ArrayList<>(shards.length);
+		for(int i=0; i<shards.length; i++) {
+			int k=i;
+			futures.add(executor.submit(() -> f.apply(k)));
+		}
+		List<T> res = new ArrayList<>(shards.length);
+		try {
+			for(Future<T> fu: futures) res.add(fu.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		return res;
+	}
+
+	/**
+	 * Releases the threads and the connections to remote shards;
+	 * shard servers keep running.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+		for(Shard s: shards) s.close();
+	}
+}
@@ -1,23 +1,46 @@
 package it.polito.oop.vaccination;
 
-import static java.util.stream.Collectors.toList;
-
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.*;
 
 public class Vaccines {
 
+    /**
+     * Year at class loading, see {@link #currentYear()} for the year
+     * actually used to compute ages.
+     */
     public final static int CURRENT_YEAR = java.time.LocalDate.now().getYear();
 
     Map<String, Person> people = new HashMap<>();
+    List<Person> rows = new ArrayList<>();
+    LazyPeople lazy;
+    QueryCache cache;
+    AllocationLog audit;
+    BitSet allocated = new BitSet();	// indexed by row
+    boolean sharedPeople;	// people, rows and years are shared with a fork
+    BirthYears years = new BirthYears();
+    int[] allocatedPerYear = new int[16];	// indexed by BirthYears.Bucket.index
+    AgeHistogram.Column column = new AgeHistogram.Column();
+    Clock clock = Clock.systemDefaultZone();
+    volatile long[] anno = new long[3];	// current year and its bounds in clock millis
+    long version;	// incremented by every change, see VaccinesServer
+    Vaccines owner;	// system read by this view, see view()
+    int limit;	// rows of the owner visible to the view
     Map<Integer, Interval> intervals = new HashMap<>();
     Map<String, Hub> hubs = new HashMap<>();
     List<Integer> hours = new ArrayList<>();
+    CapacityLedger ledger = new CapacityLedger();
     
     // R1
     /**
@@ -32,21 +55,43 @@ public class Vaccines {
      * @return {@code false} if ssn is duplicate,
      */
     public boolean addPerson(String firstName, String last, String ssn, int y) {
-        if(people.get(ssn)!=null)
+        if(people.get(ssn)!=null || (lazy!=null && lazy.contains(ssn)))
         	return false;
         
-        people.put(ssn, new Person(firstName, last, ssn, y));
+        store(new Person(firstName, last, ssn, y));
+        if(cache!=null) cache.peopleChanged(currentYear()-y);
     	
     	return true;
     }
 
+    private void store(Person p) {
+        version++;
+        unshare();
+        p.row = rows.size();
+        rows.add(p);
+        people.put(p.ssn, p);
+        years.add(p);
+    }
+
+    /**
+     * Copies people, rows and years if they are shared with a fork.
+     */
+    private void unshare() {
+        if(sharedPeople) {
+        	people = new HashMap<>(people);
+        	rows = new ArrayList<>(rows);
+        	years = years.copy();
+        	sharedPeople=false;
+        }
+    }
+
     /**
      * Count the number of people added to the system
      *
      * @return person count
      */
     public int countPeople() {
-        return people.size();
+        return (owner==null ? people.size() : limit) + (lazy==null ? 0 : lazy.size());
     }
 
     /**
@@ -58,13 +103,33 @@ public class Vaccines {
      * @return info about the person
      */
     public String getPerson(String ssn) {
-        Person p = people.get(ssn);
+        if(cache!=null) return cache.person(ssn, () -> person(ssn));
+        return person(ssn);
+    }
+
+    private String person(String ssn) {
+        Person p = lookup(ssn);
+        if(p==null && lazy!=null)
+        	p = lazy.get(ssn);
         if(p==null)
         	return null;
         
         return p.getSsn()+","+p.getLastName()+","+p.getFirstName();
     }
 
+    /**
+     * Finds a stored person; views look into the map of the owner,
+     * which may be growing, under its monitor.
+     */
+    private Person lookup(String ssn) {
+        if(owner==null) return people.get(ssn);
+        Person p;
+        synchronized(owner) {
+        	p = people.get(ssn);
+        }
+        return p==null || p.row>=limit ? null : p;
+    }
+
     /**
      * Retrieves of a person given their SSN (codice fiscale).
      *
@@ -72,11 +137,13 @@ public class Vaccines {
      * @return age of person (in years)
      */
     public int getAge(String ssn) {
-    	Person p = people.get(ssn);
-        if(p==null)
-        	return -1;
+    	Person p = lookup(ssn);
+        if(p==null) {
+        	int y = lazy==null ? -1 : lazy.getYear(ssn);
+        	return y<0 ? -1 : currentYear()-y;
+        }
         
-        return CURRENT_YEAR-p.getYear();
+        return currentYear()-p.getYear();
     }
 
     /**
@@ -93,6 +160,9 @@ public class Vaccines {
     
     //-1=+inf
     public void setAgeIntervals(int... breaks) {
+    	version++;
+    	if(cache!=null) cache.intervalsChanged();
+    	intervals.clear();	// fewer breaks than before must not leave old intervals
     	
     	if(breaks[0]==0)
     	{
@@ -171,7 +241,15 @@ public class Vaccines {
      * @return collection of SSN of person in the age interval
      */
     public Collection<String> getInInterval(String intv) {
-        Collection<String> lista = new ArrayList<>();
+        currentYear();	// a new year invalidates the cached entries
+        if(cache!=null)
+        	return cache.interval(intv, () -> Collections.unmodifiableCollection(inInterval(intv)));
+        return inInterval(intv);
+    }
+
+    private Collection<String> inInterval(String intv) {
+        materialize();
+        List<String> lista = new ArrayList<>();
         String parti[]=intv.split("\\[");
         String parti2[]=parti[1].split(",");
         
@@ -187,10 +265,11 @@ public class Vaccines {
         	
        Interval interval = new Interval(inizio, fine);
        
-       lista=people.values().stream()
-    		   .filter(p -> interval.contains(CURRENT_YEAR-p.getYear()))
-    		   .map(Person::getSsn)
-    		   .collect(Collectors.toList());
+       for(BirthYears.Bucket b: years.range(interval, currentYear()))
+    	   for(int k=0; k<b.n; k++)
+    		   lista.add(rows.get(b.rows[k]).ssn);
+       if(lazy!=null)	// only views keep people not decoded
+    	   lazy.inInterval(interval, currentYear(), lista);
 
         return lista;
         
@@ -207,7 +286,9 @@ public class Vaccines {
     	if(hubs.get(name)!=null)
     			throw new VaccineException("");
     	
+    	version++;
     	hubs.put(name, new Hub(name));
+    	ledger.addHub(name);
     }
 
     /**
@@ -236,7 +317,9 @@ public class Vaccines {
     	if(h==null)
 			throw new VaccineException("");
     	
+    	version++;
     	h.setStaff(doctors, nNurses, o);
+    	ledger.setTotal(ledger.hub(name), hours, h.estimateHourlyCapacity());
     }
 
     /**
@@ -272,62 +355,89 @@ public class Vaccines {
      * @throws VaccineException in case of error in the header
      */
     public long loadPeople(Reader people) throws IOException, VaccineException {
-        // Hint:
-        BufferedReader br = new BufferedReader(people);
-        List<String> lista = br.lines().collect(toList());
-        if(lista==null)
-        	throw new VaccineException("");
-        	
-        int i=0;
-        int aggiunti=0;
-        boolean a=l!=null;
-        for(String riga: lista)
-        {
-        	i++;
-        	if(i==1)
-        	{
-        		String parti[]=riga.split("[,]");
-            	if(parti.length!=4){
-            		if(a) {l.accept(i, riga); continue;}
-            		else throw new VaccineException("");}
-            	
-            	String ssn=parti[0];
-            	String last=parti[1];
-            	String first=parti[2];
-            	String anno=parti[3];
-            	
-            	if(ssn.compareTo("SSN")!=0 ||
-            		last.compareTo("LAST")!=0 ||
-            		first.compareTo("FIRST")!=0 ||
-            		anno.compareTo("YEAR")!=0 )
-            		throw new VaccineException("");
-        	}
-        	else
-        	{
-        		String parti[]=riga.split("[,]");
-            	if(parti.length!=4){
-            		if(a) l.accept(i, riga);
-            		continue;
-            	}
-            	
-            	String ssn=parti[0];
-            	String last=parti[1];
-            	String first=parti[2];
-            	int anno=Integer.parseInt(parti[3]);
-            	if(this.people.containsKey(ssn)&&a)l.accept(i, riga);
-            	this.addPerson(first, last, ssn, anno);
-            	aggiunti++;
-        		
-        	}
-        	
-        	
-        }
+        return loadPeople(people, CsvFormat.DEFAULT);
+    }
+
+    /**
+     * Load people information stored in UTF-8 encoded CSV format.
+     *
+     * @param in stream with the CSV content
+     * @param format CSV dialect
+     * @return number of correctly added people
+     * @throws IOException in case of IO error
+     * @throws VaccineException in case of error in the header
+     * @see #loadPeople(Reader, CsvFormat)
+     */
+    public long loadPeople(InputStream in, CsvFormat format) throws IOException, VaccineException {
+        return loadPeople(new InputStreamReader(in, StandardCharsets.UTF_8), format);
+    }
+
+    /**
+     * Load people information stored in CSV format using the given dialect.
+     * <p>
+     * Columns are located by name in the header, that must contain
+     * {@code SSN}, {@code LAST}, {@code FIRST} and {@code YEAR} in any order;
+     * a leading byte order mark is ignored.
+     * <p>
+     * Lines with a wrong number of fields, an empty SSN, an invalid year
+     * or a duplicate SSN are skipped and notified to the load listener, if any.
+     *
+     * @param people {@code Reader} for the CSV content
+     * @param format CSV dialect
+     * @return number of correctly added people
+     * @throws IOException in case of IO error
+     * @throws VaccineException in case of error in the header
+     */
+    public long loadPeople(Reader people, CsvFormat format) throws IOException, VaccineException {
+        BiConsumer<Integer,String> a=l;
         l=null;
-        br.close();
-        return aggiunti;
+        return format.read(people, a, this::addPerson);
     }
-    
 
+    /**
+     * Load people information stored in CSV format without decoding it.
+     * <p>
+     * The file content is kept in memory together with an index of
+     * the SSNs, so that {@link #getPerson} and {@link #getAge} are
+     * answered as soon as the index is built, decoding only the
+     * requested person. All the other operations on people first
+     * decode the whole file (see {@link #materialize()}).
+     * Errors are notified as in {@link #loadPeople(Reader, CsvFormat)}.
+     * <p>
+     * Files must be smaller than 2 GB.
+     *
+     * @param file path of the CSV file
+     * @param format CSV dialect
+     * @return number of correctly added people
+     * @throws IOException in case of IO error
+     * @throws VaccineException in case of error in the header
+     */
+    public long loadPeopleLazy(Path file, CsvFormat format) throws IOException, VaccineException {
+        materialize();
+        BiConsumer<Integer,String> a=l;
+        l=null;
+        int prima=countPeople();
+        version++;
+        unshare();	// the index keeps the map for duplicate checks
+        lazy = new LazyPeople(Files.readAllBytes(file), format, a, people, this::addPerson);
+        if(cache!=null) cache.peopleChanged();
+        return countPeople()-prima;
+    }
+
+    /**
+     * Decodes the people loaded by {@link #loadPeopleLazy} that
+     * have not been decoded yet.
+     * It is called by every operation that needs all the people,
+     * it can be called in advance to avoid the delay on first use.
+     */
+    public void materialize() {
+        if(lazy==null || owner!=null) return;	// views are read-only
+        LazyPeople lp=lazy;
+        lazy=null;
+        for(int i=0; i<lp.size(); i++)
+        	store(lp.decode(i));
+    }
+    
     // R4
     /**
      * Define the amount of working hours for the days of the week.
@@ -350,7 +460,11 @@ public class Vaccines {
     		hours.add(h);	
     	}
     	
+    	version++;
     	this.hours=hours;
+    	for(Hub h: hubs.values())
+    		if(h.isPersonalSet())
+    			ledger.setTotal(ledger.hub(h.name), hours, h.estimateHourlyCapacity());
     		
     }
 
@@ -416,7 +530,64 @@ public class Vaccines {
      */
     public Map<String, List<Integer>> getAvailable() {         
         return hubs.values().stream()
-        		.collect(Collectors.toMap(h->h.name, h->w(h.name)));
+        		.collect(Collectors.toMap(h->h.name, h->h.isPersonalSet() && hours.size()==7 ? totals(h.name) : w(h.name)));
+    }
+
+    private List<Integer> totals(String hub) {
+    	int k=ledger.hub(hub);
+    	List<Integer> l=new ArrayList<>();
+    	for(int d=0;d<7;d++)
+    		l.add(ledger.total(k, d));
+    	return l;
+    }
+
+    /**
+     * Returns the places of a hub on a given day not yet allocated,
+     * i.e. the daily availability minus the allocated people.
+     *
+     * @param hub name of the hub
+     * @param d day of week index (0 = Monday)
+     * @return free places, {@code 0} for undefined hubs or hubs without staff
+     * @throws IllegalArgumentException if the day is outside {@code 0..6}
+     */
+    public int getFree(String hub, int d) {
+    	CapacityLedger.day(d);
+    	int k=ledger.hub(hub);
+    	return k<0 ? 0 : ledger.free(k, d);
+    }
+
+    /**
+     * Returns the total free places of a group of hubs on a given day.
+     *
+     * @param hubs names of the hubs, undefined ones are ignored
+     * @param d day of week index (0 = Monday)
+     * @return free places
+     * @throws IllegalArgumentException if the day is outside {@code 0..6}
+     */
+    public long getFree(Collection<String> hubs, int d) {
+    	return ledger.free(hubs, d);
+    }
+
+    /**
+     * Returns the total free places of a group of hubs in the whole week.
+     *
+     * @param hubs names of the hubs, undefined ones are ignored
+     * @return free places
+     */
+    public long getFree(Collection<String> hubs) {
+    	return ledger.free(hubs);
+    }
+
+    /**
+     * Returns the hubs with most free places on a given day.
+     *
+     * @param d day of week index (0 = Monday)
+     * @param k maximum number of hubs returned
+     * @return hub names by decreasing free places, then by name
+     * @throws IllegalArgumentException if the day is outside {@code 0..6}
+     */
+    public List<String> getTopFree(int d, int k) {
+    	return ledger.top(d, k);
     }
 
     /**
@@ -436,43 +607,77 @@ public class Vaccines {
      * @return the list of daily allocations
      */
     public List<String> allocate(String hub, int d) {
+        return allocate(hub, d, getDailyAvailable(hub,d));
+    }
+
+    /**
+     * Allocates at most {@code t} places of a hub on a given day,
+     * used when the hub capacity is split among several systems.
+     */
+    List<String> allocate(String hub, int d, int t) {
+        materialize();
+        version++;
+        if(cache!=null) cache.allocationChanged();
         List<String> l=new ArrayList<>(); 
         Hub h=hubs.get(hub); 
-        int t=getDailyAvailable(hub,d); 
+        int cy=currentYear();
+        int hc=audit==null ? -1 : audit.hub(hub);
         List<Interval> r=new ArrayList<>(intervals.values()); 
         Collections.reverse(r);
         
         for(Interval i: r)
         {
+        	if(audit!=null) audit.visit(i);
         	int s=0, n=(int)Math.floor(0.4*t);
         	for(Person p: people.values())
-        		if(i.contains(age(p)) && !p.allocated && s<n)
+        		if(i.contains(cy-p.year) && !allocated.get(p.row) && s<n)
         		{
         			s++; t--; l.add(p.ssn); 
-        			p.allocated=true;
+        			assign(h, d, p, i, AllocationLog.QUOTA, hc);
         		} 
         }
         if(t!=0)
         {for(Interval i: r)
             	for(Person p: people.values())
-            		if(i.contains(age(p))&&!p.allocated&&t!=0)
+            		if(i.contains(cy-p.year)&&!allocated.get(p.row)&&t!=0)
             		{	
             			l.add(p.ssn); 
-            			p.allocated=true; 
+            			assign(h, d, p, i, AllocationLog.FILL, hc);
             			t--;
             		}
         } 
-        h.ad(d,(ArrayList<String>)l);
+        int k=ledger.hub(hub);
+        if(k>=0) ledger.use(k, d, l.size());
         return l;
     }
 
+    private void assign(Hub h, int d, Person p, Interval i, int pass, int hc) {
+        h.ad(d, p.row);
+        allocate(p);
+        if(audit!=null) audit.add(p.row, hc, d, i, pass);
+    }
+
+    private void allocate(Person p) {
+        allocated.set(p.row);
+        int k=years.get(p.year).index;
+        if(k>=allocatedPerYear.length)
+        	allocatedPerYear=Arrays.copyOf(allocatedPerYear, Math.max(k+1, allocatedPerYear.length*2));
+        allocatedPerYear[k]++;
+    }
+
     /**
      * Removes all people from allocation lists and
      * clears their allocation status
      */
     public void clearAllocation() {
-    	people.values().forEach(p->p.allocated=false);
-    	hubs.values().forEach(h->h.a.clear());
+        materialize();
+        version++;
+        if(cache!=null) cache.allocationChanged();
+    	allocated.clear();
+    	Arrays.fill(allocatedPerYear, 0);
+    	ledger.clear();
+    	if(audit!=null) audit.newRound();
+    	hubs.values().forEach(Hub::clear);
     }
 
     /**
@@ -490,17 +695,168 @@ public class Vaccines {
      * <b>N.B.</b> no particular order of allocation is guaranteed
      * but the same invocation (after {@link #clearAllocation}) must return the same
      * allocation.
+     * <p>
+     * Days are allocated one at a time; on each day every hub gets its share
+     * before moving to the next day, starting each day from a different hub
+     * in name order, so that no hub always gets the best candidates.
+     * Within an interval people are taken oldest first.
      *
      * @return the list of daily allocations
      */
     public List<Map<String, List<String>>> weekAllocate(){
+    	return weekAllocate(false);
+    }
+
+    /**
+     * Computes the allocation plan for the week as {@link #weekAllocate()},
+     * optionally letting the hubs of each day claim people concurrently.
+     * <p>
+     * The places used by each hub on each day and the people allocated
+     * on each day do not depend on {@code parallel}; in parallel mode
+     * the people of the same day and interval may be split differently
+     * among the hubs.
+     *
+     * @param parallel whether the hubs of a day claim people in parallel
+     * @return the list of daily allocations
+     */
+    public List<Map<String, List<String>>> weekAllocate(boolean parallel){
+    	return weekAllocate(parallel, null);
+    }
+
+    /**
+     * Computes the allocation plan for the week using at most {@code quote[x*7+d]}
+     * places of the x-th hub in name order on day d, used when the hub
+     * capacity is split among several systems.
+     *
+     * @param quote places by hub and day, {@code null} for the free places of the hubs
+     */
+    List<Map<String, List<String>>> weekAllocate(boolean parallel, int[] quote){
+    	materialize();
+    	version++;
+    	if(cache!=null) cache.allocationChanged();
+    	List<Interval> r=new ArrayList<>(intervals.values()); 
+    	Collections.reverse(r);
+    	ClaimQueue[] q=queues(r, currentYear());
+    	List<String> nomi=new ArrayList<>(hubs.keySet());
+    	Collections.sort(nomi);
+    	int n=nomi.size();
+    	for(int d=0;d<7;d++) {
+    		int g=d;
+    		int[][] conti=counts(nomi, d, q, quote);
+    		IntStream s=IntStream.range(0, n);
+    		if(parallel) s=s.parallel();
+    		int[][] presi=s.mapToObj(j -> claim(q, conti[(g+j)%n])).toArray(int[][]::new);
+    		for(int j=0;j<n;j++) {
+    			int x=(d+j)%n;
+    			assign(nomi.get(x), d, r, conti[x], presi[j]);
+    		}
+    	}
     	List<Map<String, List<String>>> l = new ArrayList<>();
-    	hubs.values().forEach(x->{for(int i=0;i<7;i++) allocate(x.name,i);});
     	for(int d=0;d<7;d++)
     		l.add(d(d)); 
         return l;
     }
 
+    /**
+     * Queues of the people not allocated yet, one for each interval,
+     * oldest interval and oldest people first. Each birth year goes only
+     * to the first interval containing it, in case intervals overlap.
+     */
+    private ClaimQueue[] queues(List<Interval> r, int cy) {
+    	ClaimQueue[] q=new ClaimQueue[r.size()];
+    	BitSet usati=new BitSet();	// by BirthYears.Bucket.index
+    	for(int j=0;j<r.size();j++) {
+    		List<BirthYears.Bucket> l=new ArrayList<>();
+    		int n=0;
+    		for(BirthYears.Bucket b: years.range(r.get(j), cy))
+    			if(!usati.get(b.index)) {
+    				usati.set(b.index);
+    				l.add(b);
+    				n+=b.n;
+    			}
+    		q[j]=new ClaimQueue(n);
+    		for(BirthYears.Bucket b: l)
+    			for(int x=0;x<b.n;x++)
+    				if(!allocated.get(b.rows[x])) q[j].add(b.rows[x]);
+    	}
+    	return q;
+    }
+
+    /**
+     * Number of people each hub takes from each queue on a day, visiting
+     * the hubs from a different one every day: the first half of each
+     * row is the 40% quota of the intervals, the second half the remaining
+     * places, oldest interval first.
+     */
+    private int[][] counts(List<String> nomi, int d, ClaimQueue[] q, int[] quote) {
+    	int n=nomi.size(), m=q.length;
+    	int[] resto=new int[m];
+    	for(int i=0;i<m;i++)
+    		resto[i]=q[i].remaining();
+    	int[][] c=new int[n][2*m];
+    	for(int j=0;j<n;j++) {
+    		int x=(d+j)%n;
+    		int t=ledger.free(ledger.hub(nomi.get(x)), d);
+    		if(quote!=null) t=Math.min(t, quote[x*7+d]);
+    		for(int i=0;i<m;i++) {
+    			int k=Math.min((int)Math.floor(0.4*t), resto[i]);
+    			c[x][i]=k; resto[i]-=k; t-=k;
+    		}
+    		for(int i=0;i<m && t>0;i++) {
+    			int k=Math.min(t, resto[i]);
+    			c[x][m+i]=k; resto[i]-=k; t-=k;
+    		}
+    	}
+    	return c;
+    }
+
+    /**
+     * Claims the people of a hub, touching only the queues, so that
+     * the hubs of a day can claim concurrently.
+     */
+    private static int[] claim(ClaimQueue[] q, int[] conti) {
+    	int[] presi=new int[Arrays.stream(conti).sum()];
+    	int p=0;
+    	for(int x=0;x<conti.length;x++)
+    		p+=q[x%q.length].claim(conti[x], presi, p);
+    	return presi;
+    }
+
+    /**
+     * Records the people claimed by a hub on a day.
+     */
+    private void assign(String hub, int d, List<Interval> r, int[] conti, int[] presi) {
+    	Hub h=hubs.get(hub);
+    	int hc=audit==null ? -1 : audit.hub(hub);
+    	int m=r.size(), p=0;
+    	if(audit!=null) r.forEach(audit::visit);
+    	for(int x=0;x<conti.length;x++) {
+    		Interval i=r.get(x%m);
+    		int pass= x<m ? AllocationLog.QUOTA : AllocationLog.FILL;
+    		for(int e=p+conti[x];p<e;p++)
+    			assign(h, d, rows.get(presi[p]), i, pass, hc);
+    	}
+    	ledger.use(ledger.hub(hub), d, presi.length);
+    }
+
+    /**
+     * Total and used places of the hubs in name order,
+     * indexed by {@code hub*7+day}.
+     */
+    int[][] places() {
+    	List<String> nomi=new ArrayList<>(hubs.keySet());
+    	Collections.sort(nomi);
+    	int[][] p=new int[2][nomi.size()*7];
+    	for(int x=0;x<nomi.size();x++) {
+    		int k=ledger.hub(nomi.get(x));
+    		for(int d=0;d<7;d++) {
+    			p[0][x*7+d]=ledger.total(k, d);
+    			p[1][x*7+d]=ledger.used(k, d);
+    		}
+    	}
+    	return p;
+    }
+
     // R5
     /**
      * Returns the proportion of allocated people
@@ -510,9 +866,14 @@ public class Vaccines {
      * @return proportion of allocated people
      */
     public double propAllocated() {
-    	return (double)people.values().stream()
-    			.filter(p->p.allocated)
-    			.count()/people.size();
+        currentYear();
+        if(cache!=null) return cache.stat("propAllocated", this::allocatedProportion);
+        return allocatedProportion();
+    }
+
+    private double allocatedProportion() {
+        materialize();
+    	return (double)allocated.cardinality()/countPeople();
     }
 
     /**
@@ -525,12 +886,19 @@ public class Vaccines {
      *
      * @return proportion of allocated people by age interval
      */
-    public Map<String, Double> propAllocatedAge() {        
+    public Map<String, Double> propAllocatedAge() {
+        currentYear();
+        if(cache!=null)
+        	return cache.stat("propAllocatedAge", () -> Collections.unmodifiableMap(allocatedByAge()));
+        return allocatedByAge();
+    }
+
+    private Map<String, Double> allocatedByAge() {
+        materialize();
+        int cy=currentYear();
         return intervals.values().stream()
         		.collect(Collectors.toMap(i->i.toString(),
-        				i->(double)people.values().stream()
-        				.filter(p->i.contains(age(p))&&p.allocated)
-        				.count()/people.size()));
+        				i->(double)allocated(i, cy)/countPeople()));
     }
 
     /**
@@ -544,13 +912,124 @@ public class Vaccines {
      * @return
      */
     public Map<String, Double> distributionAllocated() {
+        currentYear();
+        if(cache!=null)
+        	return cache.stat("distributionAllocated", () -> Collections.unmodifiableMap(allocatedDistribution()));
+        return allocatedDistribution();
+    }
+
+    private Map<String, Double> allocatedDistribution() {
+        materialize();
+        int cy=currentYear();
         return intervals.values().stream()
         		.collect(Collectors.toMap(i->i.toString(), 
-        				i->(double)people.values().stream()
-        				.filter(p->i.contains(age(p))&&p.allocated)
-        				.count()/(int)people.values().stream()
-        				.filter(p->p.allocated)
-        				.count()));
+        				i->(double)allocated(i, cy)/allocated.cardinality()));
+    }
+
+    /**
+     * Number of allocated people in the interval, computed from
+     * the per birth year counters.
+     */
+    private long allocated(Interval i, int cy) {
+        long n=0;
+        for(BirthYears.Bucket b: years.range(i, cy))
+        	if(b.index<allocatedPerYear.length) n+=allocatedPerYear[b.index];
+        return n;
+    }
+
+    /**
+     * Computes the number of allocated and unallocated people
+     * for each birth year with a parallel scan of all people.
+     *
+     * @return the histogram
+     */
+    public AgeHistogram getAgeHistogram() {
+        materialize();
+        column.refresh(rows);
+        return AgeHistogram.compute(column, allocated, currentYear(), true);
+    }
+
+    /**
+     * Computes the number of allocated and unallocated people
+     * in each age interval.
+     *
+     * @return map interval label to the pair allocated, unallocated
+     */
+    public Map<String, long[]> getIntervalHistogram() {
+        AgeHistogram h=getAgeHistogram();
+        Map<String, long[]> m=new LinkedHashMap<>();
+        for(Interval i: intervals.values())
+        	m.put(i.toString(), h.getInAges(i.inizio, i.fine));
+        return m;
+    }
+
+    /**
+     * Creates an independent copy of the system for what-if simulations.
+     * <p>
+     * The fork shares the people store with this system until either of
+     * them adds people; hubs, hours, age intervals and allocations
+     * are copied, so that changing them in the fork does not affect
+     * this system and vice versa. Forks can be used concurrently with
+     * each other and with the parent, as long as each single instance is
+     * used by one thread at a time.
+     *
+     * @return the new system
+     */
+    public Vaccines fork() {
+    	materialize();
+    	Vaccines f = new Vaccines();
+    	sharedPeople=true;
+    	f.sharedPeople=true;
+    	f.people=people;
+    	f.rows=rows;
+    	f.intervals=new HashMap<>(intervals);
+    	hubs.values().forEach(h -> f.hubs.put(h.name, new Hub(h)));
+    	f.ledger=new CapacityLedger(ledger);
+    	f.hours=hours;
+    	f.years=years;
+    	f.allocated=(BitSet)allocated.clone();
+    	f.allocatedPerYear=allocatedPerYear.clone();
+    	f.clock=clock;
+    	if(cache!=null) f.cache=new QueryCache(cache.maxEntries);
+    	if(audit!=null) f.audit=new AllocationLog(audit.capacity);
+    	return f;
+    }
+
+    /**
+     * Creates a read-only view of the system that other threads can query
+     * while this system keeps changing under its monitor, which must be held
+     * by the caller.
+     * <p>
+     * Unlike {@link #fork()} nothing proportional to the people is copied
+     * or decoded but the allocation bits: rows are only appended, so the
+     * view reads the prefix of the rows and of the birth year buckets that
+     * existed when it was taken, people still to be decoded are read from the
+     * lazy file and SSN lookups take the monitor just for the map access.
+     * Allocations are not visible through {@link #d}.
+     *
+     * @return the view
+     */
+    Vaccines view() {
+    	Vaccines v = new Vaccines();
+    	v.owner=this;
+    	v.limit=rows.size();
+    	v.sharedPeople=true;	// writes, if any, copy first
+    	v.people=people;
+    	v.rows=rows;
+    	v.lazy=lazy;
+    	v.years=years.view();
+    	v.intervals=new HashMap<>(intervals);
+    	for(Hub h: hubs.values()) {
+    		Hub c = new Hub(h.name, h.dottori, h.infermieri, h.altro);
+    		c.personalSetted=h.personalSetted;
+    		v.hubs.put(h.name, c);
+    	}
+    	v.ledger=new CapacityLedger(ledger);
+    	v.hours=hours;
+    	v.allocated=(BitSet)allocated.clone();
+    	v.allocatedPerYear=allocatedPerYear.clone();
+    	v.clock=clock;
+    	return v;
     }
 
     // R6
@@ -567,8 +1046,111 @@ public class Vaccines {
     	l=lsnr;
     }
     BiConsumer<Integer,String> l=null;
+
+    /**
+     * Enables caching of the results of {@link #getPerson}, {@link #getInInterval}
+     * and of the allocation statistics.
+     * Results are invalidated when people are added, intervals are redefined,
+     * the year or the clock changes or allocations change; while caching is enabled the returned
+     * collections are read-only.
+     *
+     * @param maxEntries maximum number of persons kept in the cache, {@code 0} disables caching
+     */
+    public void enableCache(int maxEntries) {
+    	cache = maxEntries>0 ? new QueryCache(maxEntries) : null;
+    }
+
+    /**
+     * Returns the query cache, e.g. to read its hit/miss metrics.
+     *
+     * @return the cache or {@code null} if caching is not enabled
+     */
+    public QueryCache getCache() {
+    	return cache;
+    }
+
+    /**
+     * Enables the audit of allocations: each allocation made by
+     * {@link #allocate} records the hub, the day, the age interval
+     * and whether the person was chosen within the interval quota
+     * or with the remaining places, see {@link #explain}.
+     *
+     * @param maxRecords number of most recent records kept, {@code 0} disables the audit
+     */
+    public void enableAudit(int maxRecords) {
+    	audit = maxRecords>0 ? new AllocationLog(maxRecords) : null;
+    }
+
+    /**
+     * Explains the allocation of a person using the audit records.
+     * <p>
+     * For people not allocated the reason is reported when known,
+     * e.g. the age is not included in any interval or the places ran out
+     * before reaching the person in an allocation seen by the audit.
+     *
+     * @param ssn SSN of the person
+     * @return descriptions of the decisions, oldest first, empty if the person does not exist
+     */
+    public List<String> explain(String ssn) {
+    	materialize();
+    	List<String> l=new ArrayList<>();
+    	Person p=people.get(ssn);
+    	if(p==null) return l;
+    	if(audit==null) {
+    		l.add("audit not enabled");
+    		return l;
+    	}
+    	l.addAll(audit.records(p.row));
+    	if(allocated.get(p.row)) {
+    		if(l.isEmpty()) l.add("allocated, records no longer available");
+    		return l;
+    	}
+    	int a=age(p);
+    	Interval i=intervals.values().stream().filter(x->x.contains(a)).findFirst().orElse(null);
+    	if(i==null) l.add("not allocated: age " + a + " is in no interval");
+    	else if(!l.isEmpty()) l.add("not allocated in the current round");
+    	else if(audit.visited(i)) l.add("not allocated: no place left for interval " + i + " before reaching the person");
+    	else l.add("not allocated: reason unknown, no allocation for interval " + i + " recorded in the current round");
+    	return l;
+    }
     public int age(Person p){
-    	return CURRENT_YEAR-p.year;
+    	return currentYear()-p.year;
+    }
+
+    /**
+     * Defines the clock used to determine the current year.
+     * <p>
+     * Ages, intervals and statistics follow the clock, so a
+     * long-running system moves to the new year on January 1st
+     * without reloading; the change costs nothing since intervals are
+     * mapped to birth years only when used.
+     *
+     * @param clock the clock, e.g. {@link Clock#systemDefaultZone()}
+     */
+    public void setClock(Clock clock) {
+    	version++;
+    	this.clock=clock;
+    	anno=new long[3];
+    	if(cache!=null) cache.intervalsChanged();
+    }
+
+    /**
+     * Returns the current year according to the clock.
+     *
+     * @return current year
+     */
+    public int currentYear() {
+    	long now=clock.millis();
+    	long[] a=anno;	// replaced as a whole, so concurrent readers see consistent bounds
+    	if(now<a[1] || now>=a[2]) {
+    		int y=LocalDate.now(clock).getYear();
+    		long inizio=LocalDate.of(y, 1, 1).atStartOfDay(clock.getZone()).toInstant().toEpochMilli();
+    		long fine=LocalDate.of(y+1, 1, 1).atStartOfDay(clock.getZone()).toInstant().toEpochMilli();
+    		if(y!=a[0] && a[0]!=0 && cache!=null) cache.intervalsChanged();
+    		a=new long[] {y, inizio, fine};
+    		anno=a;
+    	}
+    	return (int)a[0];
     }
     public List<Integer> w(String h){
     	List<Integer>l=new ArrayList<>();
@@ -578,9 +1160,8 @@ public class Vaccines {
     }
     public Map<String, List<String>> d(int day){
     	return hubs.values().stream()
-    			.filter(h->!h.a.isEmpty())
+    			.filter(Hub::isAllocated)
     			.collect(Collectors.toMap(h->h.name,
-    					h->h.a.get(day).stream()
-    					.collect(Collectors.toList())));
+    					h->h.allocated(day, rows)));
     }
 }
@@ -0,0 +1,303 @@
+package it.polito.oop.vaccination;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP query endpoint over a {@link Vaccines} instance.
+ * <p>
+ * Supported requests:
+ * <ul>
+ * <li>{@code GET /person?ssn=...} person information</li>
+ * <li>{@code GET /age?ssn=...} age of the person</li>
+ * <li>{@code GET /interval?label=[60,70)&format=csv|json} SSNs in the age interval</li>
+ * <li>{@code GET /available} available places of every hub in the 7 days</li>
+ * <li>{@code POST /allocate?hub=...&day=...} allocates a hub on a day,
+ * the hub must have staff and the hours must be set</li>
+ * <li>{@code GET /stats} allocation statistics</li>
+ * </ul>
+ * Queries are answered from a read-only snapshot of the system
+ * (see {@link Vaccines#view()}). The snapshot is replaced when the system
+ * has changed and the snapshot is older than the maximum staleness; taking it
+ * holds the {@code Vaccines} monitor for a moment, as do allocations and
+ * SSN lookups, so the system can be shared with other threads that do the same
+ * (e.g. a {@link RegistrationPipeline}). Snapshots neither decode lazily
+ * loaded people nor copy the people store, so registrations are not slowed down.
+ * Responses are written streaming large SSN lists directly to the connection.
+ * <p>
+ * Requests are served on virtual threads when the runtime provides them
+ * and on a bounded pool of daemon threads otherwise.
+ */
+public class VaccinesServer {
+	private static final Pattern LABEL = Pattern.compile("\\[\\d+,(\\d+|\\+)\\)");
+
+	private final Vaccines vaccines;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final long maxStaleness;	// nanoseconds
+	private volatile Vaccines snapshot;
+	private volatile long taken;	// System.nanoTime() of the last check
+	private long version;	// of the system when the snapshot was taken
+
+	/**
+	 * Creates a server bound to the given address, use port {@code 0}
+	 * to pick any free port (see {@link #getPort()}).
+	 * Query results lag behind changes made by other threads for at most 200 ms.
+	 */
+	public VaccinesServer(Vaccines vaccines, InetSocketAddress address) throws IOException {
+		this(vaccines, address, 200);
+	}
+
+	/**
+	 * Creates a server bound to the given address.
+	 *
+	 * @param maxStaleness maximum delay, in milliseconds, for changes made
+	 * 			by other threads to become visible to queries
+	 */
+	public VaccinesServer(Vaccines vaccines, InetSocketAddress address, long maxStaleness) throws IOException {
+		super();
+		this.vaccines = vaccines;
+		this.maxStaleness = TimeUnit.MILLISECONDS.toNanos(maxStaleness);
+		this.server = HttpServer.create(address, 1024);
+		this.executor = executor();
+		server.setExecutor(executor);
+		server.createContext("/person", handler(this::person));
+		server.createContext("/age", handler(this::age));
+		server.createContext("/interval", handler(this::interval));
+		server.createContext("/available", handler(this::available));
+		server.createContext("/allocate", handler(this::allocate));
+		server.createContext("/stats", handler(this::stats));
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private interface Handler {
+		void handle(HttpExchange ex, Map<String, String> q) throws IOException;
+	}
+
+	private HttpHandler handler(Handler h) {
+		return ex -> {
+			try {
+				h.handle(ex, query(ex));
+			} catch (RuntimeException e) {
+				// details stay on the server, the response may be already started
+				if(ex.getResponseCode()<0) text(ex, 500, "Internal error");
+			} finally {
+				ex.close();
+			}
+		};
+	}
+
+	/**
+	 * Returns a snapshot not older than the maximum staleness.
+	 */
+	private Vaccines snapshot() {
+		Vaccines s=snapshot;
+		if(s!=null && System.nanoTime()-taken<maxStaleness) return s;
+		synchronized(vaccines) {
+			if(snapshot==null || vaccines.version!=version) {
+				s=vaccines.view();
+				s.currentYear();
+				version=vaccines.version;
+				snapshot=s;
+			}
+			taken=System.nanoTime();
+			return snapshot;
+		}
+	}
+
+	private void person(HttpExchange ex, Map<String, String> q) throws IOException {
+		String ssn=q.get("ssn");
+		String p= ssn==null ? null : snapshot().getPerson(ssn);
+		if(p==null) text(ex, 404, "Unknown person");
+		else text(ex, 200, p);
+	}
+
+	private void age(HttpExchange ex, Map<String, String> q) throws IOException {
+		String ssn=q.get("ssn");
+		int a= ssn==null ? -1 : snapshot().getAge(ssn);
+		if(a<0) text(ex, 404, "Unknown person");
+		else text(ex, 200, String.valueOf(a));
+	}
+
+	private void interval(HttpExchange ex, Map<String, String> q) throws IOException {
+		String label=q.get("label");
+		if(label==null || !LABEL.matcher(label).matches()) { text(ex, 400, "Missing or wrong label"); return; }
+		Collection<String> ssns=snapshot().getInInterval(label);
+		list(ex, ssns, "json".equals(q.get("format")));
+	}
+
+	private void available(HttpExchange ex, Map<String, String> q) throws IOException {
+		Map<String, List<Integer>> av=snapshot().getAvailable();
+		try(Writer w=open(ex, 200, "application/json")) {
+			w.write('{');
+			boolean first=true;
+			for(Map.Entry<String, List<Integer>> e: av.entrySet()) {
+				if(!first) w.write(',');
+				first=false;
+				string(w, e.getKey());
+				w.write(':');
+				w.write(e.getValue().toString().replace(" ", ""));
+			}
+			w.write('}');
+		}
+	}
+
+	private void allocate(HttpExchange ex, Map<String, String> q) throws IOException {
+		if(!"POST".equals(ex.getRequestMethod())) { text(ex, 405, "Use POST"); return; }
+		String hub=q.get("hub");
+		String giorno=q.getOrDefault("day", "");
+		int day= giorno.matches("[0-6]") ? giorno.charAt(0)-'0' : -1;
+		List<String> l;
+		synchronized(vaccines) {
+			if(hub==null || !vaccines.hubs.containsKey(hub) || day<0) {
+				text(ex, 400, "Wrong hub or day");
+				return;
+			}
+			if(!vaccines.hubs.get(hub).isPersonalSet() || vaccines.hours.size()!=7) {
+				text(ex, 400, "Hub without staff or hours");
+				return;
+			}
+			l=vaccines.allocate(hub, day);
+			snapshot=null;	// the client must see its own allocation
+		}
+		list(ex, l, "json".equals(q.get("format")));
+	}
+
+	private void stats(HttpExchange ex, Map<String, String> q) throws IOException {
+		Vaccines s=snapshot();
+		double prop=s.propAllocated();
+		Map<String, Double> age=s.propAllocatedAge();
+		Map<String, Double> distr=s.distributionAllocated();
+		try(Writer w=open(ex, 200, "application/json")) {
+			w.write("{\"propAllocated\":");
+			w.write(number(prop));
+			w.write(",\"propAllocatedAge\":");
+			map(w, age);
+			w.write(",\"distributionAllocated\":");
+			map(w, distr);
+			w.write('}');
+		}
+	}
+
+	private static void list(HttpExchange ex, Collection<String> l, boolean json) throws IOException {
+		try(Writer w=open(ex, 200, json ? "application/json" : "text/csv")) {
+			if(json) w.write('[');
+			boolean first=true;
+			for(String s: l) {
+				if(json) {
+					if(!first) w.write(',');
+					string(w, s);
+				}
+				else {
+					w.write(s);
+					w.write('\n');
+				}
+				first=false;
+			}
+			if(json) w.write(']');
+		}
+	}
+
+	private static void map(Writer w, Map<String, Double> m) throws IOException {
+		w.write('{');
+		boolean first=true;
+		for(Map.Entry<String, Double> e: m.entrySet()) {
+			if(!first) w.write(',');
+			first=false;
+			string(w, e.getKey());
+			w.write(':');
+			w.write(number(e.getValue()));
+		}
+		w.write('}');
+	}
+
+	private static String number(double d) {
+		return Double.isNaN(d) || Double.isInfinite(d) ? "null" : String.valueOf(d);
+	}
+
+	private static void string(Writer w, String s) throws IOException {
+		w.write('"');
+		for(int i=0; i<s.length(); i++) {
+			char c=s.charAt(i);
+			if(c=='"' || c=='\\') { w.write('\\'); w.write(c); }
+			else if(c<0x20) w.write(String.format("\\u%04x", (int)c));
+			else w.write(c);
+		}
+		w.write('"');
+	}
+
+	/**
+	 * Sends the headers for a response of unknown length (chunked)
+	 * and returns a buffered writer over the body.
+	 */
+	private static Writer open(HttpExchange ex, int status, String type) throws IOException {
+		ex.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+		ex.sendResponseHeaders(status, 0);
+		return new BufferedWriter(new OutputStreamWriter(ex.getResponseBody(), StandardCharsets.UTF_8), 1<<16);
+	}
+
+	private static void text(HttpExchange ex, int status, String s) throws IOException {
+		byte[] b=s.getBytes(StandardCharsets.UTF_8);
+		ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		ex.sendResponseHeaders(status, b.length);
+		ex.getResponseBody().write(b);
+	}
+
+	private static Map<String, String> query(HttpExchange ex) throws UnsupportedEncodingException {
+		Map<String, String> q = new HashMap<>();
+		String s=ex.getRequestURI().getRawQuery();
+		if(s==null) return q;
+		for(String kv: s.split("&")) {
+			int i=kv.indexOf('=');
+			if(i<0) q.put(URLDecoder.decode(kv, "UTF-8"), "");
+			else q.put(URLDecoder.decode(kv.substring(0, i), "UTF-8"), URLDecoder.decode(kv.substring(i+1), "UTF-8"));
+		}
+		return q;
+	}
+
+	private static ExecutorService executor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			// when the pool is saturated the dispatcher thread serves the request itself
+			int n=4*Runtime.getRuntime().availableProcessors();
+			return new ThreadPoolExecutor(n, n, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1024), r -> {
+				Thread t=new Thread(r, "vaccines-server");
+				t.setDaemon(true);
+				return t;
+			}, new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+	}
+}